@@ -94,12 +94,15 @@ public class ActivitySelectionDialog {
     
     private static class ActivitySelectionAdapter extends RecyclerView.Adapter<ActivitySelectionAdapter.ViewHolder> {
         private List<com.lumi.dockeditor.ActivityInfo> activities;
+        private final StableIds<String> ids = new StableIds<>(false);
         private OnActivitySelectedListener listener;
         private Dialog dialog;
         
+        // The list is fixed once shown, so stable ids are all it needs; there is nothing to diff
         public ActivitySelectionAdapter(List<com.lumi.dockeditor.ActivityInfo> activities, OnActivitySelectedListener listener) {
             this.activities = activities;
             this.listener = listener;
+            setHasStableIds(true);
         }
         
         public void setDialog(Dialog dialog) {
@@ -130,6 +133,11 @@ public class ActivitySelectionDialog {
             });
         }
         
+        @Override
+        public long getItemId(int position) {
+            return ids.get(activities.get(position).name);
+        }
+        
         @Override
         public int getItemCount() {
             return activities.size();
@@ -5,14 +5,35 @@ import android.content.Context;
 
 public class App extends Application {
     private static Context context;
+    private static final DockRepository dockRepository = new DockRepository();
+    private static AppCatalog appCatalog;
+    private static IconCache iconCache;
 
     @Override
     public void onCreate() {
         super.onCreate();
         App.context = getApplicationContext();
+        // Ready by the time the picker opens, and brought up to date in the background
+        appCatalog = new AppCatalog(this);
+        appCatalog.refreshAsync();
+        iconCache = new IconCache(this);
+        // Package broadcasts are protected, so no export flag is needed
+        registerReceiver(new PackageChangeReceiver(), PackageChangeReceiver.createFilter());
     }
 
     public static Context getContext() {
         return App.context;
     }
+
+    public static DockRepository getDockRepository() {
+        return dockRepository;
+    }
+
+    public static AppCatalog getAppCatalog() {
+        return appCatalog;
+    }
+
+    public static IconCache getIconCache() {
+        return iconCache;
+    }
 }
\ No newline at end of file
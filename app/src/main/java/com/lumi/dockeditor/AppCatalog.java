@@ -0,0 +1,388 @@
+package com.lumi.dockeditor;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Installed apps for the picker, held once per process by {@link App} and kept on disk between
+ * launches. A refresh only resolves labels for packages whose lastUpdateTime or versionCode
+ * moved since the last one, so the picker can open from the saved snapshot straight away.
+ */
+public class AppCatalog {
+
+    private static final String FILE_NAME = "app_catalog.json";
+    private static final int FORMAT_VERSION = 1;
+    // Smaller batches aren't worth handing to the pool
+    private static final int RESOLVE_INLINE_MAX = 16;
+    private static final long PROGRESS_INTERVAL_MS = 150;
+    // PackageChangeReceiver keeps the snapshot current; this only bounds what a missed broadcast costs
+    private static final long STALE_AFTER_MS = 30 * 60 * 1000;
+    private static final Comparator<InstalledAppInfo> BY_NAME = (a, b) -> a.appName.compareToIgnoreCase(b.appName);
+
+    /**
+     * Called on the refresh thread with the new sorted snapshot.
+     */
+    public interface OnCatalogChangedListener {
+        void onCatalogChanged(List<InstalledAppInfo> apps);
+    }
+
+    private final Context context;
+    private final File file;
+    private final List<OnCatalogChangedListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Sorted by label, never modified once published
+    private volatile List<InstalledAppInfo> apps;
+    private volatile AppSearchIndex searchIndex;
+    private volatile Map<String, String> labels = Collections.emptyMap();
+    // Work for the background thread, guarded by this
+    private boolean working;
+    private boolean refreshPending;
+    private final Set<String> pendingPackages = new HashSet<>();
+    private long lastRefreshStarted;
+    private final ThreadPoolExecutor labelResolver;
+
+    public AppCatalog(Context context) {
+        this.context = context.getApplicationContext();
+        this.file = new File(this.context.getFilesDir(), FILE_NAME);
+        // One thread per core; they exit when idle, since only a cold build keeps them busy
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        this.labelResolver = new ThreadPoolExecutor(threads, threads, 5, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "AppCatalog-labels");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.labelResolver.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * The current snapshot, or null if neither the saved one nor a refresh has been loaded yet.
+     */
+    public List<InstalledAppInfo> getApps() {
+        return apps;
+    }
+
+    /**
+     * Search over the current snapshot, or null along with it.
+     */
+    public AppSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * The package's label from the current snapshot, or null if it isn't in it (yet).
+     */
+    public String getLabel(String packageName) {
+        return labels.get(packageName);
+    }
+
+    public void addListener(OnCatalogChangedListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(OnCatalogChangedListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Loads the saved snapshot if that hasn't happened yet, then refreshes it against
+     * PackageManager on a background thread. Requests made while a refresh runs are folded
+     * into one more pass after it.
+     */
+    public void refreshAsync() {
+        synchronized (this) {
+            refreshPending = true;
+            lastRefreshStarted = System.currentTimeMillis();
+        }
+        startWorker();
+    }
+
+    /**
+     * Like {@link #refreshAsync()}, but only if the last full refresh was requested more than
+     * STALE_AFTER_MS ago. Cheap enough to call whenever the picker opens.
+     */
+    public void refreshIfStale() {
+        synchronized (this) {
+            if (System.currentTimeMillis() - lastRefreshStarted < STALE_AFTER_MS) return;
+        }
+        refreshAsync();
+    }
+
+    /**
+     * Re-reads one package after it was installed, updated, changed or removed, without
+     * listing the others. Packages reported while the worker is busy are handled together.
+     */
+    public void packageChangedAsync(String packageName) {
+        synchronized (this) {
+            pendingPackages.add(packageName);
+        }
+        startWorker();
+    }
+
+    private void startWorker() {
+        synchronized (this) {
+            if (working) return;
+            working = true;
+        }
+        new Thread(() -> {
+            while (true) {
+                boolean fullRefresh;
+                List<String> packages;
+                synchronized (this) {
+                    fullRefresh = refreshPending;
+                    packages = new ArrayList<>(pendingPackages);
+                    refreshPending = false;
+                    pendingPackages.clear();
+                    if (!fullRefresh && packages.isEmpty()) {
+                        working = false;
+                        return;
+                    }
+                }
+                try {
+                    if (apps == null) loadSaved();
+                    // Without any snapshot there is nothing to patch, so list everything
+                    if (fullRefresh || apps == null) {
+                        refresh();
+                    } else {
+                        updatePackages(packages);
+                    }
+                } catch (RuntimeException e) {
+                    // E.g. PackageManager died mid-call. The snapshot stays as it was, and the loop
+                    // goes on to whatever was requested since instead of leaving working set for good
+                }
+            }
+        }, "AppCatalog").start();
+    }
+
+    private void loadSaved() {
+        List<InstalledAppInfo> saved = readFile();
+        if (saved != null && apps == null) {
+            publish(saved);
+        }
+    }
+
+    /**
+     * Compares installed packages with the snapshot and re-resolves only the ones that changed.
+     * Blocks, so call it off the UI thread.
+     */
+    private void refresh() {
+        PackageManager pm = context.getPackageManager();
+        List<PackageInfo> installed = pm.getInstalledPackages(0);
+
+        Map<String, InstalledAppInfo> known = new HashMap<>();
+        List<InstalledAppInfo> current = apps;
+        if (current != null) {
+            for (InstalledAppInfo app : current) {
+                known.put(app.packageName, app);
+            }
+        }
+
+        List<InstalledAppInfo> refreshed = new ArrayList<>(installed.size());
+        List<PackageInfo> changed = new ArrayList<>();
+        for (PackageInfo packageInfo : installed) {
+            // We still don't want to see the editor itself in the list.
+            if (packageInfo.applicationInfo == null || packageInfo.packageName.equals(context.getPackageName())) {
+                continue;
+            }
+            InstalledAppInfo previous = known.remove(packageInfo.packageName);
+            if (previous != null && previous.lastUpdateTime == packageInfo.lastUpdateTime
+                    && previous.versionCode == packageInfo.getLongVersionCode()) {
+                refreshed.add(previous);
+            } else {
+                changed.add(packageInfo);
+            }
+        }
+
+        // Nothing new or updated, and nothing left in known, i.e. uninstalled
+        if (current != null && changed.isEmpty() && known.isEmpty()) return;
+
+        // Only a cold build shows partial lists; otherwise the old snapshot stays up until done
+        resolveLabels(pm, changed, refreshed, current == null);
+        Collections.sort(refreshed, BY_NAME);
+        publish(refreshed);
+        writeFile(refreshed);
+    }
+
+    /**
+     * Resolves labels across the pool, adding entries to the list as they complete. With
+     * progressive set, what's done so far is published every PROGRESS_INTERVAL_MS so the picker
+     * fills in while the rest resolve. Icons aren't touched here; IconCache loads them per row.
+     */
+    private void resolveLabels(PackageManager pm, List<PackageInfo> packages, List<InstalledAppInfo> into,
+                               boolean progressive) {
+        if (packages.size() <= RESOLVE_INLINE_MAX) {
+            for (PackageInfo packageInfo : packages) {
+                into.add(resolve(pm, packageInfo));
+            }
+            return;
+        }
+
+        CompletionService<InstalledAppInfo> completion = new ExecutorCompletionService<>(labelResolver);
+        for (PackageInfo packageInfo : packages) {
+            completion.submit(() -> resolve(pm, packageInfo));
+        }
+        long lastPublish = System.currentTimeMillis();
+        for (int i = 0; i < packages.size(); i++) {
+            try {
+                into.add(completion.take().get());
+            } catch (ExecutionException e) {
+                // Left out until its next update or refresh
+                continue;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (progressive && now - lastPublish >= PROGRESS_INTERVAL_MS && i < packages.size() - 1) {
+                List<InstalledAppInfo> partial = new ArrayList<>(into);
+                Collections.sort(partial, BY_NAME);
+                publish(partial);
+                lastPublish = now;
+            }
+        }
+    }
+
+    private static InstalledAppInfo resolve(PackageManager pm, PackageInfo packageInfo) {
+        String appName = pm.getApplicationLabel(packageInfo.applicationInfo).toString();
+        return new InstalledAppInfo(packageInfo.packageName, appName,
+                packageInfo.lastUpdateTime, packageInfo.getLongVersionCode());
+    }
+
+    /**
+     * Replaces or drops just the given packages' entries, each looked up on its own.
+     */
+    private void updatePackages(List<String> packages) {
+        PackageManager pm = context.getPackageManager();
+        List<InstalledAppInfo> updated = new ArrayList<>(apps);
+        for (String packageName : packages) {
+            for (int i = 0; i < updated.size(); i++) {
+                if (updated.get(i).packageName.equals(packageName)) {
+                    updated.remove(i);
+                    break;
+                }
+            }
+            if (packageName.equals(context.getPackageName())) continue;
+            try {
+                PackageInfo packageInfo = pm.getPackageInfo(packageName, 0);
+                if (packageInfo.applicationInfo == null) continue;
+                // Always resolved again: a changed package can have a new label at the same version
+                InstalledAppInfo app = resolve(pm, packageInfo);
+                int position = Collections.binarySearch(updated, app, BY_NAME);
+                updated.add(position < 0 ? -position - 1 : position, app);
+            } catch (PackageManager.NameNotFoundException e) {
+                // Uninstalled, its entry stays out
+            }
+        }
+        publish(updated);
+        writeFile(updated);
+    }
+
+    private void publish(List<InstalledAppInfo> snapshot) {
+        List<InstalledAppInfo> published = Collections.unmodifiableList(snapshot);
+        // Built here, off the UI thread, so the picker only ever queries it
+        searchIndex = new AppSearchIndex(published);
+        Map<String, String> byPackage = new HashMap<>(published.size() * 2);
+        for (InstalledAppInfo app : published) {
+            byPackage.put(app.packageName, app.appName);
+        }
+        labels = byPackage;
+        apps = published;
+        for (OnCatalogChangedListener listener : listeners) {
+            listener.onCatalogChanged(apps);
+        }
+    }
+
+    private List<InstalledAppInfo> readFile() {
+        if (!file.exists()) return null;
+        try (FileInputStream input = new FileInputStream(file)) {
+            byte[] content = new byte[(int) file.length()];
+            int offset = 0;
+            int read;
+            while (offset < content.length && (read = input.read(content, offset, content.length - offset)) != -1) {
+                offset += read;
+            }
+            JSONObject root = new JSONObject(new String(content, 0, offset, StandardCharsets.UTF_8));
+            // Labels are localized, so a snapshot from another locale is resolved again
+            if (root.optInt("version") != FORMAT_VERSION || !currentLocale().equals(root.optString("locale"))) {
+                return null;
+            }
+            JSONArray entries = root.getJSONArray("apps");
+            List<InstalledAppInfo> saved = new ArrayList<>(entries.length());
+            for (int i = 0; i < entries.length(); i++) {
+                JSONObject entry = entries.getJSONObject(i);
+                saved.add(new InstalledAppInfo(
+                    entry.getString("packageName"),
+                    entry.getString("appName"),
+                    entry.getLong("lastUpdateTime"),
+                    entry.getLong("versionCode")
+                ));
+            }
+            return saved;
+        } catch (IOException | JSONException e) {
+            // Unreadable or from an older format, rebuilt by the refresh
+            return null;
+        }
+    }
+
+    private void writeFile(List<InstalledAppInfo> snapshot) {
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            JSONArray entries = new JSONArray();
+            for (InstalledAppInfo app : snapshot) {
+                JSONObject entry = new JSONObject();
+                entry.put("packageName", app.packageName);
+                entry.put("appName", app.appName);
+                entry.put("lastUpdateTime", app.lastUpdateTime);
+                entry.put("versionCode", app.versionCode);
+                entries.put(entry);
+            }
+            JSONObject root = new JSONObject();
+            root.put("version", FORMAT_VERSION);
+            root.put("locale", currentLocale());
+            root.put("apps", entries);
+
+            try (FileOutputStream output = new FileOutputStream(temp)) {
+                output.write(root.toString().getBytes(StandardCharsets.UTF_8));
+                output.getFD().sync();
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Could not replace " + file);
+            }
+        } catch (IOException | JSONException e) {
+            // Only costs a full resolve next launch
+            temp.delete();
+        }
+    }
+
+    private String currentLocale() {
+        Locale locale = context.getResources().getConfiguration().getLocales().get(0);
+        return locale.toLanguageTag();
+    }
+}
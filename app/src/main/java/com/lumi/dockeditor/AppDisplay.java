@@ -0,0 +1,57 @@
+package com.lumi.dockeditor;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.drawable.Drawable;
+
+/**
+ * Labels and icons for pinned entries. Kept apart from AppInfo so the model stays plain Java.
+ */
+public class AppDisplay {
+
+    /**
+     * Never asks PackageManager, so rows can call it on the UI thread: known system entries,
+     * then the label {@link AppCatalog} resolved on its own thread, then a name made from the
+     * package name until the catalog has one.
+     */
+    public static String getDisplayName(AppInfo app) {
+        String packageName = app.getPackageName();
+        switch (packageName) {
+            case "com.oculus.explore": return "Oculus Explore";
+            case "com.oculus.store": return "Oculus Store";
+            case "messenger_system_app": return "Messenger";
+            case "share_system_app": return "Share";
+            case "com.oculus.browser": return "Oculus Browser";
+        }
+        AppCatalog catalog = App.getAppCatalog();
+        String label = catalog == null ? null : catalog.getLabel(packageName);
+        if (label != null) {
+            return label;
+        }
+        String[] parts = packageName.split("\\.");
+        if (parts.length > 0) {
+            String appName = parts[parts.length - 1];
+            return appName.substring(0, 1).toUpperCase() + appName.substring(1);
+        }
+        return packageName;
+    }
+    
+    /**
+     * Full-size icon straight from PackageManager. Lists go through {@link IconCache} instead.
+     */
+    @SuppressWarnings("deprecation")
+    public static Drawable getDisplayIcon(Context context, String packageName) {
+        PackageManager pm = context.getPackageManager();
+        switch (packageName) {
+            case "messenger_system_app":
+                return context.getResources().getDrawable(android.R.drawable.ic_dialog_email);
+            case "share_system_app":
+                return context.getResources().getDrawable(android.R.drawable.ic_menu_share);
+        }
+        try {
+            return pm.getApplicationIcon(packageName);
+        } catch (PackageManager.NameNotFoundException e) {
+            return context.getResources().getDrawable(android.R.drawable.sym_def_app_icon);
+        }
+    }
+}
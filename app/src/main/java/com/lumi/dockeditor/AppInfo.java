@@ -1,153 +1,154 @@
 package com.lumi.dockeditor;
 
-import android.content.Context;
-import android.content.pm.PackageManager;
-import android.graphics.drawable.Drawable;
-import android.os.Parcel;
-import android.os.Parcelable;
-
 import org.json.JSONException;
 import org.json.JSONObject;
 
-public class AppInfo implements Parcelable {
-    public String packageName;
-    public String type;
-    public String platformName;
-    public String activity;
-    public String componentName; // New field to preserve the original componentName
+/**
+ * One pinned dock entry. Immutable: it holds the entry's JSON exactly as stored and decodes
+ * fields the first time one is asked for. Saving writes {@link #toJson()} back, so an entry
+ * that was never changed leaves the file byte for byte as it came in.
+ */
+public final class AppInfo {
+    private static final String DEFAULT_TYPE = "APP";
+    private static final String DEFAULT_PLATFORM = "ANDROID_6DOF";
+
+    private final String json;
+    // Decoded on first access; a race only means decoding twice
+    private volatile Fields fields;
+
+    private static final class Fields {
+        final String packageName;
+        final String type;
+        final String platformName;
+        final String componentName;
+        final String activity;
+
+        Fields(String packageName, String type, String platformName, String componentName) {
+            this.packageName = packageName;
+            this.type = type;
+            this.platformName = platformName;
+            this.componentName = componentName;
+            this.activity = componentName.contains("/")
+                    ? componentName.substring(componentName.indexOf("/") + 1) : componentName;
+        }
+    }
 
-    public String originalJsonString;
+    /**
+     * Wraps an entry as read from the file. Nothing is parsed yet.
+     */
+    public AppInfo(String json) {
+        this.json = json;
+    }
 
     /**
-     * Constructor used when PARSING an existing app.
+     * A brand new entry for the given package, launching the given activity or its default one
+     * when the activity is empty.
      */
-    public AppInfo(String originalJsonString) {
-        this.originalJsonString = originalJsonString;
+    public static AppInfo create(String packageName, String activity) {
+        JSONObject jsonObject = new JSONObject();
         try {
-            JSONObject jsonObject = new JSONObject(originalJsonString);
-            this.packageName = jsonObject.optString("packageName", "Unknown");
-            this.type = jsonObject.optString("type", "APP");
-            this.platformName = jsonObject.optString("platformName", "ANDROID_6DOF");
-
-            if (jsonObject.has("appPanelData")) {
-                JSONObject appPanelData = jsonObject.getJSONObject("appPanelData");
-                this.componentName = appPanelData.optString("componentName", "");
-            } else {
-                this.componentName = "";
-            }
-
-            if (this.componentName.contains("/")) {
-                this.activity = this.componentName.substring(this.componentName.indexOf("/") + 1);
-            } else {
-                this.activity = this.componentName;
-            }
-
+            jsonObject.put("packageName", packageName);
+            jsonObject.put("type", DEFAULT_TYPE);
+            jsonObject.put("platformName", DEFAULT_PLATFORM);
+            jsonObject.put("appPanelData", panelData(new JSONObject(), packageName, activity));
         } catch (JSONException e) {
-            this.packageName = "JSON_Parse_Error";
-            this.activity = e.getMessage();
-            this.componentName = "Error";
+            // Should not happen
         }
+        return new AppInfo(encode(jsonObject));
     }
 
     /**
-     * Constructor used when CREATING a brand new app entry.
+     * This entry pointed at another package and activity. Every other key of the stored JSON
+     * is kept. Returns this same instance when nothing would change.
      */
-    public AppInfo(String packageName, String type, String platformName, String activity) {
-        this.packageName = packageName;
-        this.type = type;
-        this.platformName = platformName;
-        this.activity = activity != null ? activity : "";
-        this.componentName = activity.isEmpty() ? "" : this.packageName + "/" + this.activity;
-
-        JSONObject jsonObject = new JSONObject();
+    public AppInfo withTarget(String packageName, String activity) {
+        String componentName = activity == null || activity.isEmpty() ? "" : packageName + "/" + activity;
+        if (packageName.equals(getPackageName()) && componentName.equals(getComponentName())) {
+            return this;
+        }
         try {
-            jsonObject.put("packageName", this.packageName);
-            jsonObject.put("type", this.type);
-            jsonObject.put("platformName", this.platformName);
+            JSONObject jsonObject = new JSONObject(json);
+            jsonObject.put("packageName", packageName);
+            JSONObject appPanelData = jsonObject.optJSONObject("appPanelData");
+            jsonObject.put("appPanelData", panelData(appPanelData != null ? appPanelData : new JSONObject(), packageName, activity));
+            jsonObject.remove("activity");
+            return new AppInfo(encode(jsonObject));
+        } catch (JSONException e) {
+            // The stored entry is unreadable; start over rather than carry it along
+            return create(packageName, activity);
+        }
+    }
 
-            JSONObject appPanelData = new JSONObject();
-            if (!this.componentName.isEmpty()) {
-                appPanelData.put("componentName", this.componentName);
-            }
-            jsonObject.put("appPanelData", appPanelData);
+    private static JSONObject panelData(JSONObject appPanelData, String packageName, String activity) throws JSONException {
+        if (activity != null && !activity.isEmpty()) {
+            appPanelData.put("componentName", packageName + "/" + activity);
+        } else {
+            appPanelData.remove("componentName");
+        }
+        return appPanelData;
+    }
 
-        } catch (JSONException e) {
-            // Should not happen
+    private static String encode(JSONObject jsonObject) {
+        // org.json escapes slashes, SystemUX doesn't
+        return jsonObject.toString().replace("\\/", "/");
+    }
+
+    private Fields fields() {
+        Fields decoded = fields;
+        if (decoded == null) {
+            try {
+                JSONObject jsonObject = new JSONObject(json);
+                JSONObject appPanelData = jsonObject.optJSONObject("appPanelData");
+                decoded = new Fields(
+                        jsonObject.optString("packageName", "Unknown"),
+                        jsonObject.optString("type", DEFAULT_TYPE),
+                        jsonObject.optString("platformName", DEFAULT_PLATFORM),
+                        appPanelData != null ? appPanelData.optString("componentName", "") : "");
+            } catch (JSONException e) {
+                decoded = new Fields("JSON_Parse_Error", DEFAULT_TYPE, DEFAULT_PLATFORM, "Error/" + e.getMessage());
+            }
+            fields = decoded;
         }
-        this.originalJsonString = jsonObject.toString();
+        return decoded;
     }
 
-    protected AppInfo(Parcel in) {
-        packageName = in.readString();
-        type = in.readString();
-        platformName = in.readString();
-        activity = in.readString();
-        componentName = in.readString();
-        originalJsonString = in.readString();
+    public String getPackageName() {
+        return fields().packageName;
     }
 
-    @Override
-    public void writeToParcel(Parcel dest, int flags) {
-        dest.writeString(packageName);
-        dest.writeString(type);
-        dest.writeString(platformName);
-        dest.writeString(activity);
-        dest.writeString(componentName);
-        dest.writeString(originalJsonString);
+    public String getType() {
+        return fields().type;
     }
 
-    @Override
-    public int describeContents() {
-        return 0;
+    public String getPlatformName() {
+        return fields().platformName;
     }
 
-    public static final Creator<AppInfo> CREATOR = new Creator<AppInfo>() {
-        @Override
-        public AppInfo createFromParcel(Parcel in) {
-            return new AppInfo(in);
-        }
+    public String getComponentName() {
+        return fields().componentName;
+    }
 
-        @Override
-        public AppInfo[] newArray(int size) {
-            return new AppInfo[size];
-        }
-    };
-
-    public String getDisplayName() {
-        switch (packageName) {
-            case "com.oculus.explore": return "Oculus Explore";
-            case "com.oculus.store": return "Oculus Store";
-            case "messenger_system_app": return "Messenger";
-            case "share_system_app": return "Share";
-            case "com.oculus.browser": return "Oculus Browser";
-            default:
-                try {
-                    PackageManager pm = App.getContext().getPackageManager();
-                    return pm.getApplicationLabel(pm.getApplicationInfo(packageName, 0)).toString();
-                } catch (Exception e) {
-                    String[] parts = packageName.split("\\.");
-                    if (parts.length > 0) {
-                        String appName = parts[parts.length - 1];
-                        return appName.substring(0, 1).toUpperCase() + appName.substring(1);
-                    }
-                    return packageName;
-                }
-        }
+    /**
+     * The activity part of the component name, empty for the package's default activity.
+     */
+    public String getActivity() {
+        return fields().activity;
     }
-    
-    @SuppressWarnings("deprecation")
-    public Drawable getDisplayIcon(Context context) {
-        PackageManager pm = context.getPackageManager();
-        switch (packageName) {
-            case "messenger_system_app":
-                return context.getResources().getDrawable(android.R.drawable.ic_dialog_email);
-            case "share_system_app":
-                return context.getResources().getDrawable(android.R.drawable.ic_menu_share);
-        }
-        try {
-            return pm.getApplicationIcon(packageName);
-        } catch (PackageManager.NameNotFoundException e) {
-            return context.getResources().getDrawable(android.R.drawable.sym_def_app_icon);
-        }
+
+    /**
+     * The entry's JSON as it is written to the file.
+     */
+    public String toJson() {
+        return json;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof AppInfo && json.equals(((AppInfo) other).json);
+    }
+
+    @Override
+    public int hashCode() {
+        return json.hashCode();
     }
-}
\ No newline at end of file
+}
@@ -1,8 +1,5 @@
 package com.lumi.dockeditor;
 
-import android.content.Context;
-import android.content.pm.PackageManager;
-import android.graphics.drawable.Drawable;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
@@ -10,11 +7,19 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 import java.util.List;
 
 public class AppListAdapter extends RecyclerView.Adapter<AppListAdapter.AppViewHolder> {
+    // Same package, other activity: the label and icon on screen still apply
+    private static final Object PAYLOAD_ACTIVITY = new Object();
+    // The catalog resolved new labels; icons and activities on screen still apply
+    private static final Object PAYLOAD_LABEL = new Object();
+
     private List<AppInfo> apps;
+    // By identity, since the same entry can be pinned twice
+    private final StableIds<AppInfo> ids = new StableIds<>(true);
     private OnStartDragListener dragListener;
     private OnItemClickListener clickListener;
     private OnItemRemoveListener removeListener;
@@ -37,6 +42,80 @@ public class AppListAdapter extends RecyclerView.Adapter<AppListAdapter.AppViewH
         this.dragListener = dragListener;
         this.clickListener = clickListener;
         this.removeListener = removeListener;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Call after the entry at position was replaced by an edited copy of previous.
+     */
+    public void notifyItemReplaced(int position, AppInfo previous) {
+        AppInfo current = apps.get(position);
+        ids.transfer(previous, current);
+        boolean samePackage = previous.getPackageName().equals(current.getPackageName());
+        notifyItemChanged(position, samePackage ? PAYLOAD_ACTIVITY : null);
+    }
+
+    /**
+     * Call after removed was taken out of the list at position.
+     */
+    public void notifyItemRemoved(int position, AppInfo removed) {
+        ids.remove(removed);
+        notifyItemRemoved(position);
+    }
+
+    /**
+     * Call after the list was refilled from previous, with the diff between the two. Rows the
+     * diff matched keep their ids; only what it reports changed is rebound.
+     */
+    public void notifyListReplaced(List<AppInfo> previous, DiffUtil.DiffResult diff) {
+        for (int i = 0; i < previous.size(); i++) {
+            int newPosition = diff.convertOldPositionToNew(i);
+            if (newPosition == RecyclerView.NO_POSITION) {
+                ids.remove(previous.get(i));
+            } else {
+                ids.transfer(previous.get(i), apps.get(newPosition));
+            }
+        }
+        diff.dispatchUpdatesTo(this);
+    }
+
+    /**
+     * Call after the catalog published new labels, to show them without rebinding anything else.
+     */
+    public void notifyLabelsChanged() {
+        notifyItemRangeChanged(0, apps.size(), PAYLOAD_LABEL);
+    }
+
+    /**
+     * Entries have no key besides their JSON, so an equal entry is the same item, unchanged.
+     */
+    public static DiffUtil.Callback diffCallback(List<AppInfo> oldApps, List<AppInfo> newApps) {
+        return new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldApps.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newApps.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                return oldApps.get(oldPosition).equals(newApps.get(newPosition));
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return ids.get(apps.get(position));
     }
     
     @NonNull
@@ -52,6 +131,18 @@ public class AppListAdapter extends RecyclerView.Adapter<AppListAdapter.AppViewH
         AppInfo app = apps.get(position);
         holder.bind(app);
     }
+
+    @Override
+    public void onBindViewHolder(@NonNull AppViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty() || payloads.contains(null)) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        // Skips the icon, which is the same for the same package
+        AppInfo app = apps.get(position);
+        if (payloads.contains(PAYLOAD_LABEL)) holder.bindLabel(app);
+        if (payloads.contains(PAYLOAD_ACTIVITY)) holder.bindActivity(app);
+    }
     
     @Override
     public int getItemCount() {
@@ -74,28 +165,19 @@ public class AppListAdapter extends RecyclerView.Adapter<AppListAdapter.AppViewH
             activityName = itemView.findViewById(R.id.activityName);
             dragHandle = itemView.findViewById(R.id.dragHandle);
             removeButton = itemView.findViewById(R.id.removeButton);
-        }
-        
-        public void bind(AppInfo app) {
-            appName.setText(app.getDisplayName());
-            packageName.setText(app.packageName);
-            activityName.setText(app.activity.isEmpty() ? "Default Activity" : app.activity);
-
-            // **UPDATED ICON LOGIC**
-            // Use the new, smarter method to get the display icon
-            appIcon.setImageDrawable(app.getDisplayIcon(itemView.getContext()));
             
-            // Click to edit app
+            // Set once: they look up the row's position when used, so they never need rebinding
             itemView.setOnClickListener(v -> {
-                if (clickListener != null) {
-                    clickListener.onItemClick(getAdapterPosition());
+                int position = getBindingAdapterPosition();
+                if (clickListener != null && position != RecyclerView.NO_POSITION) {
+                    clickListener.onItemClick(position);
                 }
             });
             
-            // Remove button
             removeButton.setOnClickListener(v -> {
-                if (removeListener != null) {
-                    removeListener.onItemRemove(getAdapterPosition());
+                int position = getBindingAdapterPosition();
+                if (removeListener != null && position != RecyclerView.NO_POSITION) {
+                    removeListener.onItemRemove(position);
                 }
             });
             
@@ -109,5 +191,23 @@ public class AppListAdapter extends RecyclerView.Adapter<AppListAdapter.AppViewH
                 return false;
             });
         }
+        
+        public void bind(AppInfo app) {
+            bindLabel(app);
+            packageName.setText(app.getPackageName());
+            bindActivity(app);
+
+            // Downsampled and cached, loaded off the UI thread on a miss
+            App.getIconCache().loadInto(appIcon, app.getPackageName());
+        }
+
+        public void bindLabel(AppInfo app) {
+            // From the catalog, which resolves labels off the UI thread
+            appName.setText(AppDisplay.getDisplayName(app));
+        }
+
+        public void bindActivity(AppInfo app) {
+            activityName.setText(app.getActivity().isEmpty() ? "Default Activity" : app.getActivity());
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,146 @@
+package com.lumi.dockeditor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Prefix index over the picker's apps, built once per catalog snapshot. Every word of the
+ * label and every segment of the package name is a token, along with the whole package name;
+ * tokens are kept sorted, so each query term is a binary search plus a walk over the tokens
+ * that start with it. Nothing scans the app list per keystroke.
+ *
+ * An app matches when every term prefixes one of its tokens. Results are ranked by how the
+ * terms matched, the first word of the label counting most, then other label words, then the
+ * package name, and fall back to the snapshot's alphabetical order.
+ */
+public class AppSearchIndex {
+
+    private static final int SCORE_LABEL_START = 4;
+    private static final int SCORE_LABEL_WORD = 2;
+    private static final int SCORE_PACKAGE = 1;
+
+    private final List<InstalledAppInfo> apps;
+    // Parallel arrays sorted by token
+    private final String[] tokens;
+    private final int[] owners;
+    private final int[] scores;
+
+    public AppSearchIndex(List<InstalledAppInfo> apps) {
+        this.apps = apps;
+        List<Entry> entries = new ArrayList<>(apps.size() * 6);
+        for (int i = 0; i < apps.size(); i++) {
+            InstalledAppInfo app = apps.get(i);
+            List<String> words = split(app.appName);
+            for (int w = 0; w < words.size(); w++) {
+                entries.add(new Entry(words.get(w), i, w == 0 ? SCORE_LABEL_START : SCORE_LABEL_WORD));
+            }
+            String packageName = app.packageName.toLowerCase(Locale.ROOT);
+            entries.add(new Entry(packageName, i, SCORE_PACKAGE));
+            for (String segment : split(packageName)) {
+                entries.add(new Entry(segment, i, SCORE_PACKAGE));
+            }
+        }
+        Collections.sort(entries, (a, b) -> a.token.compareTo(b.token));
+
+        tokens = new String[entries.size()];
+        owners = new int[entries.size()];
+        scores = new int[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            tokens[i] = entry.token;
+            owners[i] = entry.owner;
+            scores[i] = entry.score;
+        }
+    }
+
+    public List<InstalledAppInfo> getApps() {
+        return apps;
+    }
+
+    /**
+     * Apps matching every whitespace-separated term of the query, best first. A blank query
+     * returns the whole snapshot.
+     */
+    public List<InstalledAppInfo> search(String query) {
+        String[] terms = query.trim().toLowerCase(Locale.ROOT).split("\\s+");
+        if (terms.length == 0 || terms[0].isEmpty()) {
+            return apps;
+        }
+
+        // matched[app] is how many terms the app has matched so far; only apps that matched
+        // all earlier terms can match the next one
+        int[] matched = new int[apps.size()];
+        int[] total = new int[apps.size()];
+        int[] termScore = new int[apps.size()];
+        int[] candidates = new int[apps.size()];
+        int candidateCount = 0;
+
+        for (int t = 0; t < terms.length; t++) {
+            String term = terms[t];
+            int end = Arrays.binarySearch(tokens, term + Character.MAX_VALUE);
+            end = end < 0 ? -end - 1 : end;
+            int start = Arrays.binarySearch(tokens, term);
+            for (int k = start < 0 ? -start - 1 : start; k < end; k++) {
+                int owner = owners[k];
+                if (matched[owner] == t) {
+                    if (t == 0) candidates[candidateCount++] = owner;
+                    matched[owner] = t + 1;
+                    termScore[owner] = scores[k];
+                    total[owner] += scores[k];
+                } else if (matched[owner] == t + 1 && scores[k] > termScore[owner]) {
+                    // Another token of the same app matched this term better
+                    total[owner] += scores[k] - termScore[owner];
+                    termScore[owner] = scores[k];
+                }
+            }
+        }
+
+        Integer[] results = new Integer[candidateCount];
+        int resultCount = 0;
+        for (int c = 0; c < candidateCount; c++) {
+            if (matched[candidates[c]] == terms.length) {
+                results[resultCount++] = candidates[c];
+            }
+        }
+        Arrays.sort(results, 0, resultCount, (a, b) -> total[a] != total[b] ? total[b] - total[a] : a - b);
+
+        List<InstalledAppInfo> found = new ArrayList<>(resultCount);
+        for (int r = 0; r < resultCount; r++) {
+            found.add(apps.get(results[r]));
+        }
+        return found;
+    }
+
+    /**
+     * Lowercase runs of letters and digits.
+     */
+    private static List<String> split(String text) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start == -1) {
+                start = i;
+            } else if (!wordChar && start != -1) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private static class Entry {
+        final String token;
+        final int owner;
+        final int score;
+
+        Entry(String token, int owner, int score) {
+            this.token = token;
+            this.owner = owner;
+            this.score = score;
+        }
+    }
+}
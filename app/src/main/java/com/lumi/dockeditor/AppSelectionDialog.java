@@ -2,19 +2,22 @@ package com.lumi.dockeditor;
 
 import android.app.Dialog;
 import android.content.Context;
-import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.EditText;
 import android.widget.ImageView;
+import android.widget.LinearLayout;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 public class AppSelectionDialog {
@@ -31,101 +34,157 @@ public class AppSelectionDialog {
     }
     
     public void show() {
-        List<InstalledAppInfo> installedApps = getInstalledApps();
+        AppCatalog catalog = App.getAppCatalog();
+        int padding = Math.round(16 * context.getResources().getDisplayMetrics().density);
+
+        EditText searchBox = new EditText(context);
+        searchBox.setHint("Search apps");
+        searchBox.setSingleLine(true);
         
         RecyclerView recyclerView = new RecyclerView(context);
         recyclerView.setLayoutManager(new LinearLayoutManager(context));
         // Use a new adapter instance to prevent state issues if dialog is reused
-        AppSelectionAdapter adapter = new AppSelectionAdapter(installedApps, listener, () -> {
+        AppSelectionAdapter adapter = new AppSelectionAdapter(new ArrayList<>(), listener, () -> {
             // This is a simple way to close the dialog from the adapter
             // A more robust solution would involve passing the Dialog instance
         });
         recyclerView.setAdapter(adapter);
 
+        LinearLayout content = new LinearLayout(context);
+        content.setOrientation(LinearLayout.VERTICAL);
+        content.setPadding(padding, padding / 2, padding, 0);
+        content.addView(searchBox);
+        content.addView(recyclerView);
+
+        // Each keystroke is one query against the prebuilt index
+        Runnable applyQuery = () -> {
+            AppSearchIndex index = catalog.getSearchIndex();
+            if (index != null) {
+                adapter.setApps(index.search(searchBox.getText().toString()));
+            }
+        };
+        searchBox.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                applyQuery.run();
+            }
+        });
+
+        // Open on the saved snapshot and swap in the refreshed one when it's ready
+        AppCatalog.OnCatalogChangedListener catalogListener = apps -> recyclerView.post(applyQuery);
+        catalog.addListener(catalogListener);
+        applyQuery.run();
+
         AlertDialog dialog = new AlertDialog.Builder(context)
             .setTitle("Select App")
-            .setView(recyclerView)
+            .setView(content)
             .setNegativeButton("Cancel", null)
+            .setOnDismissListener(d -> catalog.removeListener(catalogListener))
             .show();
 
         // Pass the dialog to the adapter so it can be dismissed
         adapter.setDialog(dialog);
+        // Single installs and removals arrive through PackageChangeReceiver; no full rescan per open
+        catalog.refreshIfStale();
     }
 
-    private List<InstalledAppInfo> getInstalledApps() {
-        List<InstalledAppInfo> apps = new ArrayList<>();
-        PackageManager pm = context.getPackageManager();
-        
-        List<ApplicationInfo> installedPackages = pm.getInstalledApplications(PackageManager.GET_META_DATA);
-        
-        for (ApplicationInfo appInfo : installedPackages) {
-            // THE FILTER HAS BEEN REMOVED to show all apps, including system components.
-            try {
-                // We still don't want to see the editor itself in the list.
-                if (appInfo.packageName.equals(context.getPackageName())) {
-                    continue;
-                }
-                
-                String appName = pm.getApplicationLabel(appInfo).toString();
-                apps.add(new InstalledAppInfo(
-                    appInfo.packageName,
-                    appName,
-                    pm.getApplicationIcon(appInfo.packageName)
-                ));
-            } catch (PackageManager.NameNotFoundException e) {
-                // Skip this app if its details can't be loaded
-            }
-        }
-        
-        // Sort alphabetically
-        Collections.sort(apps, (a, b) -> a.appName.compareToIgnoreCase(b.appName));
-        
-        return apps;
-    }
-    
     private static class AppSelectionAdapter extends RecyclerView.Adapter<AppSelectionAdapter.ViewHolder> {
-        private List<InstalledAppInfo> apps;
+        // Same package and version, new label: the icon on screen still applies
+        private static final Object PAYLOAD_LABEL = new Object();
+
+        private static final DiffUtil.ItemCallback<InstalledAppInfo> DIFF = new DiffUtil.ItemCallback<InstalledAppInfo>() {
+            @Override
+            public boolean areItemsTheSame(@NonNull InstalledAppInfo oldApp, @NonNull InstalledAppInfo newApp) {
+                return oldApp.packageName.equals(newApp.packageName);
+            }
+
+            @Override
+            public boolean areContentsTheSame(@NonNull InstalledAppInfo oldApp, @NonNull InstalledAppInfo newApp) {
+                return oldApp.appName.equals(newApp.appName) && sameVersion(oldApp, newApp);
+            }
+
+            @Override
+            public Object getChangePayload(@NonNull InstalledAppInfo oldApp, @NonNull InstalledAppInfo newApp) {
+                return sameVersion(oldApp, newApp) ? PAYLOAD_LABEL : null;
+            }
+
+            private boolean sameVersion(InstalledAppInfo oldApp, InstalledAppInfo newApp) {
+                return oldApp.lastUpdateTime == newApp.lastUpdateTime && oldApp.versionCode == newApp.versionCode;
+            }
+        };
+
+        // Diffs each new result list against the shown one on a background thread
+        private final AsyncListDiffer<InstalledAppInfo> differ = new AsyncListDiffer<>(this, DIFF);
+        private final StableIds<String> ids = new StableIds<>(false);
         private OnAppSelectedListener listener;
         private Dialog dialog; // Reference to the dialog to close it
 
         public AppSelectionAdapter(List<InstalledAppInfo> apps, OnAppSelectedListener listener, Runnable closeAction) {
-            this.apps = apps;
             this.listener = listener;
+            setHasStableIds(true);
+            differ.submitList(apps);
         }
 
         public void setDialog(Dialog dialog) {
             this.dialog = dialog;
         }
+
+        public void setApps(List<InstalledAppInfo> apps) {
+            differ.submitList(apps);
+        }
         
         @NonNull
         @Override
         public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
             View view = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.item_app_selection, parent, false);
-            return new ViewHolder(view);
-        }
-        
-        @Override
-        public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-            InstalledAppInfo app = apps.get(position);
-            holder.appName.setText(app.appName);
-            holder.packageName.setText(app.packageName);
-            holder.appIcon.setImageDrawable(app.icon);
+            ViewHolder holder = new ViewHolder(view);
             
             holder.itemView.setOnClickListener(v -> {
+                int position = holder.getBindingAdapterPosition();
+                if (position == RecyclerView.NO_POSITION) return;
                 if (listener != null) {
-                    listener.onAppSelected(app);
+                    listener.onAppSelected(differ.getCurrentList().get(position));
                 }
                 // Close the dialog when an app is selected
                 if (dialog != null) {
                     dialog.dismiss();
                 }
             });
+            return holder;
+        }
+        
+        @Override
+        public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+            InstalledAppInfo app = differ.getCurrentList().get(position);
+            holder.appName.setText(app.appName);
+            holder.packageName.setText(app.packageName);
+            App.getIconCache().loadInto(holder.appIcon, app.packageName);
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+            if (payloads.isEmpty() || payloads.contains(null)) {
+                onBindViewHolder(holder, position);
+            } else {
+                holder.appName.setText(differ.getCurrentList().get(position).appName);
+            }
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return ids.get(differ.getCurrentList().get(position).packageName);
         }
         
         @Override
         public int getItemCount() {
-            return apps.size();
+            return differ.getCurrentList().size();
         }
         
         static class ViewHolder extends RecyclerView.ViewHolder {
@@ -0,0 +1,289 @@
+package com.lumi.dockeditor;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and rewrites SystemUX's AUI_PREFERENCES.xml. Both directions are one pass of an
+ * XmlPullParser over the file. Writing copies every token back out as it was read and only
+ * swaps the text of the pinned apps entry, so the other keys SystemUX keeps there, like the
+ * app history, survive a save.
+ */
+public class AuiPreferencesCodec {
+
+    public static final String PINNED_KEY = "aui_bar_apps_pinned";
+
+    // What a new file starts from when there is nothing on the device to patch
+    private static final String EMPTY_PREFERENCES =
+            "<?xml version='1.0' encoding='utf-8' standalone='yes' ?>\n" +
+            "<map>\n" +
+            "    <string name=\"" + PINNED_KEY + "\">[]</string>\n" +
+            "\t<string name=\"aui_bar_apps_history\">[]</string>\n" +
+            "</map>";
+
+    private static XmlPullParserFactory factory;
+
+    private static synchronized XmlPullParser newParser(String xml) throws XmlPullParserException {
+        if (factory == null) {
+            factory = XmlPullParserFactory.newInstance();
+        }
+        XmlPullParser parser = factory.newPullParser();
+        parser.setInput(new StringReader(xml));
+        return parser;
+    }
+
+    /**
+     * Parses the pinned apps, one AppInfo per entry with the entry's JSON exactly as stored.
+     */
+    public static ArrayList<AppInfo> parsePinnedApps(String xml) throws XmlPullParserException, IOException {
+        String value = readPinnedValue(xml);
+        if (value == null) {
+            throw new IllegalArgumentException("Could not find pinned apps data in file");
+        }
+        ArrayList<AppInfo> appList = new ArrayList<>();
+        for (String entry : splitArray(value)) {
+            appList.add(new AppInfo(entry));
+        }
+        return appList;
+    }
+
+    /**
+     * The decoded text of the pinned apps entry, or null if the file doesn't have one.
+     */
+    public static String readPinnedValue(String xml) throws XmlPullParserException, IOException {
+        XmlPullParser parser = newParser(xml);
+        int event;
+        while ((event = parser.next()) != XmlPullParser.END_DOCUMENT) {
+            if (event == XmlPullParser.START_TAG && isPinnedEntry(parser)) {
+                return parser.nextText();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the file with the pinned apps text replaced by the given JSON. Everything else is
+     * copied token by token, entity references included, so it comes out as it went in. An
+     * empty or missing file yields a fresh one holding just the pinned apps and an empty history.
+     */
+    public static String replacePinnedValue(String xml, String pinnedJson) throws XmlPullParserException, IOException {
+        if (xml == null || xml.trim().isEmpty()) {
+            xml = EMPTY_PREFERENCES;
+        }
+        StringBuilder out = new StringBuilder(xml.length() + pinnedJson.length());
+
+        // The parser consumes the declaration without reporting it, so it is copied as is
+        if (xml.startsWith("<?xml")) {
+            int end = xml.indexOf("?>");
+            if (end != -1) out.append(xml, 0, end + 2);
+        }
+
+        XmlPullParser parser = newParser(xml);
+        boolean replaced = false;
+        int event;
+        while ((event = parser.nextToken()) != XmlPullParser.END_DOCUMENT) {
+            switch (event) {
+                case XmlPullParser.START_TAG:
+                    boolean empty = parser.isEmptyElementTag();
+                    if (!replaced && isPinnedEntry(parser)) {
+                        appendStartTag(out, parser, false);
+                        appendEscaped(out, pinnedJson);
+                        skipToEndTag(parser, empty);
+                        out.append("</").append(parser.getName()).append('>');
+                        replaced = true;
+                    } else if (!replaced && empty && parser.getDepth() == 1) {
+                        // A map with no keys at all, opened up to take the pinned entry
+                        appendStartTag(out, parser, false);
+                        out.append('\n');
+                        appendPinnedEntry(out, pinnedJson);
+                        out.append("</").append(parser.getName()).append('>');
+                        parser.nextToken();
+                        replaced = true;
+                    } else {
+                        appendStartTag(out, parser, empty);
+                        // The parser reports an END_TAG for <a/> too, which has nothing left to write
+                        if (empty) parser.nextToken();
+                    }
+                    break;
+                case XmlPullParser.END_TAG:
+                    if (!replaced && parser.getDepth() == 1) {
+                        // No pinned entry yet, add it as the map's last child
+                        appendPinnedEntry(out, pinnedJson);
+                        replaced = true;
+                    }
+                    out.append("</").append(parser.getName()).append('>');
+                    break;
+                case XmlPullParser.TEXT:
+                case XmlPullParser.IGNORABLE_WHITESPACE:
+                    out.append(parser.getText());
+                    break;
+                case XmlPullParser.ENTITY_REF:
+                    out.append('&').append(parser.getName()).append(';');
+                    break;
+                case XmlPullParser.CDSECT:
+                    out.append("<![CDATA[").append(parser.getText()).append("]]>");
+                    break;
+                case XmlPullParser.COMMENT:
+                    out.append("<!--").append(parser.getText()).append("-->");
+                    break;
+                case XmlPullParser.PROCESSING_INSTRUCTION:
+                    out.append("<?").append(parser.getText()).append("?>");
+                    break;
+                case XmlPullParser.DOCDECL:
+                    out.append("<!DOCTYPE").append(parser.getText()).append('>');
+                    break;
+                default:
+                    break;
+            }
+        }
+        return out.toString();
+    }
+
+    private static void appendPinnedEntry(StringBuilder out, String pinnedJson) {
+        out.append("    <string name=\"").append(PINNED_KEY).append("\">");
+        appendEscaped(out, pinnedJson);
+        out.append("</string>\n");
+    }
+
+    private static boolean isPinnedEntry(XmlPullParser parser) {
+        return parser.getDepth() == 2 && "string".equals(parser.getName())
+                && PINNED_KEY.equals(parser.getAttributeValue(null, "name"));
+    }
+
+    private static void skipToEndTag(XmlPullParser parser, boolean empty) throws XmlPullParserException, IOException {
+        if (empty) {
+            parser.nextToken();
+            return;
+        }
+        int depth = parser.getDepth();
+        int event;
+        while ((event = parser.nextToken()) != XmlPullParser.END_DOCUMENT) {
+            if (event == XmlPullParser.END_TAG && parser.getDepth() == depth) return;
+        }
+    }
+
+    /**
+     * Writes a start tag the way Android's SharedPreferences serializer does: double-quoted
+     * attributes and " />" for empty elements.
+     */
+    private static void appendStartTag(StringBuilder out, XmlPullParser parser, boolean empty) {
+        out.append('<').append(parser.getName());
+        for (int i = 0; i < parser.getAttributeCount(); i++) {
+            out.append(' ').append(parser.getAttributeName(i)).append("=\"");
+            appendEscaped(out, parser.getAttributeValue(i));
+            out.append('"');
+        }
+        out.append(empty ? " />" : ">");
+    }
+
+    /**
+     * Escapes like Android's SharedPreferences serializer, which also turns quotes in text into &amp;quot;.
+     */
+    private static void appendEscaped(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&': out.append("&amp;"); break;
+                case '<': out.append("&lt;"); break;
+                case '>': out.append("&gt;"); break;
+                case '"': out.append("&quot;"); break;
+                default: out.append(c);
+            }
+        }
+    }
+
+    /**
+     * Splits a JSON array into the raw text of its elements by tracking bracket depth and
+     * strings, without parsing the elements themselves.
+     */
+    public static List<String> splitArray(String json) {
+        List<String> elements = new ArrayList<>();
+        int depth = 0;
+        int start = -1;
+        boolean inString = false;
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (inString) {
+                if (c == '\\') i++;
+                else if (c == '"') inString = false;
+                continue;
+            }
+            switch (c) {
+                case '"':
+                    inString = true;
+                    if (depth == 1 && start == -1) start = i;
+                    break;
+                case '[':
+                case '{':
+                    if (depth == 1 && start == -1) start = i;
+                    depth++;
+                    break;
+                case ']':
+                case '}':
+                    depth--;
+                    if (depth == 0 && start != -1) {
+                        elements.add(json.substring(start, i).trim());
+                        start = -1;
+                    }
+                    break;
+                case ',':
+                    if (depth == 1) {
+                        if (start != -1) elements.add(json.substring(start, i).trim());
+                        start = -1;
+                    }
+                    break;
+                default:
+                    if (depth == 1 && start == -1 && !Character.isWhitespace(c)) start = i;
+            }
+        }
+        return elements;
+    }
+
+    /**
+     * The pinned value for the given apps. Each entry is written exactly as it is held.
+     */
+    public static String serializePinnedApps(List<AppInfo> apps) {
+        List<String> entries = new ArrayList<>(apps.size());
+        for (AppInfo app : apps) {
+            entries.add(app.toJson());
+        }
+        return joinArray(entries);
+    }
+
+    /**
+     * Joins entries back into an array with the separators SystemUX writes: ", " between
+     * entries, except " ," before the last one.
+     */
+    public static String joinArray(List<String> elements) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < elements.size(); i++) {
+            json.append(elements.get(i));
+            if (i < elements.size() - 1) {
+                json.append(i == elements.size() - 2 ? " ," : ", ");
+            }
+        }
+        return json.append(']').toString();
+    }
+
+    /**
+     * SHA-256 of the text, so what a save would write can be compared with what was read
+     * without keeping both around.
+     */
+    public static byte[] digest(String text) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android and Java runtime has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
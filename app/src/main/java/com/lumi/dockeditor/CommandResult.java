@@ -0,0 +1,26 @@
+package com.lumi.dockeditor;
+
+public class CommandResult {
+    public final int exitCode;
+    public final String stdout;
+    public final String stderr;
+
+    public CommandResult(int exitCode, String stdout, String stderr) {
+        this.exitCode = exitCode;
+        this.stdout = stdout;
+        this.stderr = stderr;
+    }
+
+    public boolean isSuccess() {
+        return exitCode == 0;
+    }
+
+    /**
+     * Both streams joined, for log output where it doesn't matter which one a line came from.
+     */
+    public String getCombinedOutput() {
+        if (stderr == null || stderr.isEmpty()) return stdout != null ? stdout : "";
+        if (stdout == null || stdout.isEmpty()) return stderr;
+        return stdout + (stdout.endsWith("\n") ? "" : "\n") + stderr;
+    }
+}
@@ -0,0 +1,51 @@
+package com.lumi.dockeditor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The dock as last read from or written to AUI_PREFERENCES.xml, held once per process by
+ * {@link App}. Screens share the same snapshot instead of passing copies around; entries are
+ * immutable, so handing out the list is safe.
+ */
+public class DockRepository {
+
+    public static final String TARGET_FILE = "/data/user/0/com.oculus.systemux/shared_prefs/AUI_PREFERENCES.xml";
+
+    private List<AppInfo> pinnedApps;
+    // Size/mtime/inode of the file the snapshot came from
+    private String loadedStat;
+
+    /**
+     * Reads and parses the file through RootShell and keeps the result. Blocks, so call it off
+     * the UI thread. Returns null if the file couldn't be read.
+     */
+    public List<AppInfo> load() throws Exception {
+        String content = RootShell.getFileContent(TARGET_FILE);
+        if (content == null) return null;
+        String stat = RootShell.getReadStat(TARGET_FILE);
+        List<AppInfo> parsed = AuiPreferencesCodec.parsePinnedApps(content);
+        return update(parsed, stat);
+    }
+
+    /**
+     * Replaces the snapshot, e.g. after a save or an external change was picked up.
+     */
+    public synchronized List<AppInfo> update(List<AppInfo> apps, String stat) {
+        pinnedApps = Collections.unmodifiableList(new ArrayList<>(apps));
+        loadedStat = stat;
+        return pinnedApps;
+    }
+
+    /**
+     * The current snapshot, or null if nothing was loaded in this process yet.
+     */
+    public synchronized List<AppInfo> getPinnedApps() {
+        return pinnedApps;
+    }
+
+    public synchronized String getLoadedStat() {
+        return loadedStat;
+    }
+}
@@ -4,13 +4,14 @@ import android.os.Bundle;
 import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.ViewModelProvider;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.ItemTouchHelper;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.lumi.dockeditor.databinding.ActivityEditPinnedBinding;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -20,8 +21,11 @@ public class EditPinnedActivity extends AppCompatActivity {
     private AppListAdapter adapter;
     private List<AppInfo> appList;
     private ItemTouchHelper itemTouchHelper;
+    private EditPinnedViewModel viewModel;
+    private AppCatalog.OnCatalogChangedListener catalogListener;
+    private boolean destroyed;
 
-    private static final String TARGET_FILE = "/data/user/0/com.oculus.systemux/shared_prefs/AUI_PREFERENCES.xml";
+    private static final String TARGET_FILE = DockRepository.TARGET_FILE;
     private static final int MAX_APPS = 5;
 
     @Override
@@ -34,17 +38,87 @@ public class EditPinnedActivity extends AppCompatActivity {
             getSupportActionBar().setDisplayHomeAsUpEnabled(true);
         }
 
-        appList = getIntent().getParcelableArrayListExtra("appList");
-        if (appList == null) {
+        // Survives recreation; only the first onCreate takes the list from the repository
+        viewModel = new ViewModelProvider(this).get(EditPinnedViewModel.class);
+        if (!viewModel.init(App.getDockRepository())) {
             appList = new ArrayList<>();
             Toast.makeText(this, "Error: Could not load app list.", Toast.LENGTH_LONG).show();
             finish();
             return;
         }
+        appList = viewModel.getAppList();
 
         setupRecyclerView();
         setupButtons();
         updateAddButtonState();
+        binding.saveButton.setEnabled(viewModel.isDirty());
+        startFileWatcher();
+
+        // Rows show a name made from the package until the catalog has resolved its label
+        catalogListener = apps -> runOnUiThread(() -> {
+            if (!destroyed) adapter.notifyLabelsChanged();
+        });
+        App.getAppCatalog().addListener(catalogListener);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        destroyed = true;
+        if (catalogListener != null) {
+            App.getAppCatalog().removeListener(catalogListener);
+        }
+        if (viewModel != null) {
+            // The watcher itself stays with the ViewModel until the editor is closed for good
+            viewModel.setFileChangeListener(null);
+        }
+    }
+
+    private void startFileWatcher() {
+        viewModel.setFileChangeListener(filePath -> runOnUiThread(this::onTargetFileChanged));
+        viewModel.watchFile(TARGET_FILE);
+    }
+
+    private void onTargetFileChanged() {
+        if (destroyed) return;
+        if (viewModel.isDirty()) {
+            // Unsaved edits win; the save will ask before overwriting
+            Toast.makeText(this, "AUI_PREFERENCES.xml was changed by SystemUX.", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        reloadFromDevice();
+    }
+
+    private void reloadFromDevice() {
+        // What's on screen now, to diff the file's list against off the UI thread
+        List<AppInfo> shown = new ArrayList<>(appList);
+        new Thread(() -> {
+            try {
+                DockRepository repository = App.getDockRepository();
+                List<AppInfo> fresh = repository.load();
+                if (fresh == null) return;
+                String stat = repository.getLoadedStat();
+                DiffUtil.DiffResult diff = DiffUtil.calculateDiff(AppListAdapter.diffCallback(shown, fresh));
+                runOnUiThread(() -> {
+                    // Edits may have started while the file was being read
+                    if (destroyed || viewModel.isDirty() || !appList.equals(shown)) return;
+                    applyRefreshedList(shown, fresh, stat, diff);
+                });
+            } catch (Exception e) {
+                runOnUiThread(() -> Toast.makeText(this, "Reload error: " + e.getMessage(),
+                        Toast.LENGTH_SHORT).show());
+            }
+        }).start();
+    }
+
+    /**
+     * Replaces the list, notifying only the rows the diff found added, removed or moved.
+     */
+    private void applyRefreshedList(List<AppInfo> shown, List<AppInfo> fresh, String stat, DiffUtil.DiffResult diff) {
+        // Refills the same list the adapter holds
+        viewModel.reset(fresh, stat);
+        adapter.notifyListReplaced(shown, diff);
+        updateAddButtonState();
     }
 
     @Override
@@ -66,8 +140,8 @@ public class EditPinnedActivity extends AppCompatActivity {
                 ItemTouchHelper.UP | ItemTouchHelper.DOWN, 0) {
             @Override
             public boolean onMove(@NonNull RecyclerView recyclerView, @NonNull RecyclerView.ViewHolder viewHolder, @NonNull RecyclerView.ViewHolder target) {
-                int fromPosition = viewHolder.getAdapterPosition();
-                int toPosition = target.getAdapterPosition();
+                int fromPosition = viewHolder.getBindingAdapterPosition();
+                int toPosition = target.getBindingAdapterPosition();
                 onAppReorder(fromPosition, toPosition);
                 return true;
             }
@@ -83,7 +157,7 @@ public class EditPinnedActivity extends AppCompatActivity {
     }
 
     private void setupButtons() {
-        binding.saveButton.setOnClickListener(v -> saveChanges());
+        binding.saveButton.setOnClickListener(v -> saveChanges(false));
         binding.addAppButton.setOnClickListener(v -> {
             if (appList.size() < MAX_APPS) {
                 showAppSelectionDialog();
@@ -93,66 +167,48 @@ public class EditPinnedActivity extends AppCompatActivity {
         });
     }
 
-    private void saveChanges() {
+    /**
+     * Writes the list back. Unless forced, first checks that nobody changed the file since it was
+     * loaded and asks before overwriting their edit.
+     */
+    private void saveChanges(boolean overwriteExternalChanges) {
         new Thread(() -> {
             try {
-                // First, create the JSONArray as before to ensure data is correct
-                JSONArray newAppsArray = new JSONArray();
-                for (AppInfo app : appList) {
-                    JSONObject appObj = new JSONObject(app.originalJsonString);
-                    appObj.put("packageName", app.packageName);
-                    JSONObject appPanelData = appObj.optJSONObject("appPanelData");
-                    if (appPanelData == null) {
-                        appPanelData = new JSONObject();
-                    }
-                    if (app.componentName != null && !app.componentName.isEmpty()) {
-                        appPanelData.put("componentName", app.componentName);
-                    } else {
-                        appPanelData.remove("componentName");
-                    }
-                    appObj.put("appPanelData", appPanelData);
-                    appObj.remove("activity");
-                    newAppsArray.put(appObj);
+                // Entries that weren't edited go back out exactly as they were read
+                String pinnedJson = AuiPreferencesCodec.serializePinnedApps(appList);
+                if (MessageDigest.isEqual(AuiPreferencesCodec.digest(pinnedJson), viewModel.getLoadedPinnedDigest())) {
+                    // E.g. an item dragged away and back: nothing to write, nothing to restart
+                    runOnUiThread(this::onNothingToSave);
+                    return;
                 }
 
-                // ** NEW LOGIC: Manually build the string to control spacing **
-                StringBuilder jsonBuilder = new StringBuilder("[");
-                for (int i = 0; i < newAppsArray.length(); i++) {
-                    // Get the string for the current app object
-                    String appString = newAppsArray.getJSONObject(i).toString();
-                    jsonBuilder.append(appString);
-
-                    // Append the correct, inconsistent separator
-                    if (i < newAppsArray.length() - 1) {
-                        if (i == newAppsArray.length() - 2) {
-                            // This is the separator between the 2nd to last and last item
-                            jsonBuilder.append(" ,");
-                        } else {
-                            jsonBuilder.append(", ");
-                        }
+                String loadedStat = viewModel.getLoadedStat();
+                if (!overwriteExternalChanges && loadedStat != null) {
+                    String currentStat = RootShell.getFileStat(TARGET_FILE);
+                    if (currentStat != null && !currentStat.equals(loadedStat)) {
+                        runOnUiThread(this::showExternalChangeDialog);
+                        return;
                     }
                 }
-                jsonBuilder.append("]");
-
-                String finalJsonString = jsonBuilder.toString();
-
-                String encodedJson = finalJsonString
-                        .replace("\\/", "/") // Un-escape slashes
-                        .replace("\"", "&quot;"); // Escape quotes for XML
 
-                String newXmlContent = "<?xml version='1.0' encoding='utf-8' standalone='yes' ?>\n" +
-                        "<map>\n" +
-                        "    <string name=\"aui_bar_apps_pinned\">" + encodedJson + "</string>\n" +
-                        "\t<string name=\"aui_bar_apps_history\">[]</string>\n" +
-                        "</map>";
+                // Patch the pinned value into what is on the device now, so every other key SystemUX keeps there survives
+                String currentXml = RootShell.getFileContent(TARGET_FILE);
+                String newXmlContent = AuiPreferencesCodec.replacePinnedValue(currentXml, pinnedJson);
+                if (newXmlContent.equals(currentXml)) {
+                    runOnUiThread(this::onNothingToSave);
+                    return;
+                }
 
                 boolean success = RootShell.writeFileContent(TARGET_FILE, newXmlContent);
+                if (success) {
+                    App.getDockRepository().update(appList, RootShell.getFileStat(TARGET_FILE));
+                }
 
                 runOnUiThread(() -> {
                     if (success) {
                         Toast.makeText(this, "Changes saved successfully!\nRestart Oculus system to see changes.",
                                 Toast.LENGTH_LONG).show();
-                        binding.saveButton.setEnabled(false);
+                        setDirty(false);
                         finish();
                     } else {
                         Toast.makeText(this, "Save failed: check log for details.", Toast.LENGTH_SHORT).show();
@@ -166,11 +222,36 @@ public class EditPinnedActivity extends AppCompatActivity {
         }).start();
     }
 
+    private void setDirty(boolean dirty) {
+        viewModel.setDirty(dirty);
+        binding.saveButton.setEnabled(dirty);
+    }
+
+    private void onNothingToSave() {
+        Toast.makeText(this, "No changes to save.", Toast.LENGTH_SHORT).show();
+        setDirty(false);
+        finish();
+    }
+
+    private void showExternalChangeDialog() {
+        if (destroyed) return;
+        new androidx.appcompat.app.AlertDialog.Builder(this)
+                .setTitle("File changed on device")
+                .setMessage("SystemUX changed AUI_PREFERENCES.xml after it was loaded. Saving now will overwrite that change.")
+                .setPositiveButton("Overwrite", (dialog, which) -> saveChanges(true))
+                .setNeutralButton("Discard my edits", (dialog, which) -> {
+                    setDirty(false);
+                    reloadFromDevice();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
     private void onAppReorder(int from, int to) {
         if (from != to) {
             Collections.swap(appList, from, to);
             adapter.notifyItemMoved(from, to);
-            binding.saveButton.setEnabled(true);
+            setDirty(true);
         }
     }
 
@@ -179,11 +260,11 @@ public class EditPinnedActivity extends AppCompatActivity {
     }
 
     private void onAppRemove(int position) {
-        appList.remove(position);
-        adapter.notifyItemRemoved(position);
-        adapter.notifyItemRangeChanged(position, appList.size());
+        AppInfo removed = appList.remove(position);
+        // Later rows look their position up when clicked, so they don't need rebinding
+        adapter.notifyItemRemoved(position, removed);
         updateAddButtonState();
-        binding.saveButton.setEnabled(true);
+        setDirty(true);
     }
 
     private void updateAddButtonState() {
@@ -205,29 +286,20 @@ public class EditPinnedActivity extends AppCompatActivity {
 
     private void showActivitySelectionDialog(InstalledAppInfo selectedApp, int editPosition) {
         ActivitySelectionDialog dialog = new ActivitySelectionDialog(this, selectedApp, (activity) -> {
-            AppInfo newAppInfo = new AppInfo(
-                    selectedApp.packageName,
-                    "APP",
-                    "ANDROID_6DOF",
-                    activity.name
-            );
-
             if (editPosition == -1) {
                 if (appList.size() < MAX_APPS) {
-                    appList.add(newAppInfo);
+                    appList.add(AppInfo.create(selectedApp.packageName, activity.name));
                     adapter.notifyItemInserted(appList.size() - 1);
                     updateAddButtonState();
                 }
             } else {
                 AppInfo existingApp = appList.get(editPosition);
-                existingApp.packageName = newAppInfo.packageName;
-                existingApp.activity = newAppInfo.activity;
-                existingApp.componentName = newAppInfo.componentName;
-                existingApp.originalJsonString = newAppInfo.originalJsonString;
-
-                adapter.notifyItemChanged(editPosition);
+                AppInfo editedApp = existingApp.withTarget(selectedApp.packageName, activity.name);
+                if (editedApp == existingApp) return;
+                appList.set(editPosition, editedApp);
+                adapter.notifyItemReplaced(editPosition, existingApp);
             }
-            binding.saveButton.setEnabled(true);
+            setDirty(true);
         });
         dialog.show();
     }
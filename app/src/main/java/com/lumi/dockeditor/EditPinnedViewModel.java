@@ -0,0 +1,121 @@
+package com.lumi.dockeditor;
+
+import androidx.lifecycle.ViewModel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The editor's working copy of the dock. Lives across configuration changes, so a theme toggle
+ * or rotation keeps unsaved edits without re-reading or re-parsing anything.
+ */
+public class EditPinnedViewModel extends ViewModel {
+
+    private List<AppInfo> appList;
+    private boolean dirty;
+    // Size/mtime/inode of the file the list was loaded from, to catch edits made behind our back
+    private volatile String loadedStat;
+    // Digest of the pinned value the list was loaded from; a save that would produce it again is skipped
+    private volatile byte[] loadedPinnedDigest;
+    // Kept here so a recreated editor doesn't open another session for the same file
+    private FileWatcher fileWatcher;
+    private boolean watching;
+    private boolean cleared;
+    private volatile FileWatcher.OnChangeListener fileChangeListener;
+
+    /**
+     * Starts from the repository's snapshot the first time. Returns false if there is none,
+     * e.g. after the process was restarted without going through MainActivity.
+     */
+    public boolean init(DockRepository repository) {
+        if (appList != null) return true;
+        List<AppInfo> snapshot = repository.getPinnedApps();
+        if (snapshot == null) return false;
+        reset(snapshot, repository.getLoadedStat());
+        return true;
+    }
+
+    /**
+     * Drops any edits and starts over from the given list.
+     */
+    public void reset(List<AppInfo> apps, String stat) {
+        if (appList == null) {
+            appList = new ArrayList<>(apps);
+        } else {
+            appList.clear();
+            appList.addAll(apps);
+        }
+        loadedStat = stat;
+        loadedPinnedDigest = AuiPreferencesCodec.digest(AuiPreferencesCodec.serializePinnedApps(apps));
+        dirty = false;
+    }
+
+    public List<AppInfo> getAppList() {
+        return appList;
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public void setDirty(boolean dirty) {
+        this.dirty = dirty;
+    }
+
+    public String getLoadedStat() {
+        return loadedStat;
+    }
+
+    public byte[] getLoadedPinnedDigest() {
+        return loadedPinnedDigest;
+    }
+
+    /**
+     * Starts watching the file once for this ViewModel; later calls do nothing while a watcher
+     * is running or starting. Changes go to whichever listener is set when they happen.
+     */
+    public void watchFile(String filePath) {
+        synchronized (this) {
+            if (cleared) return;
+            // A watcher whose session died is replaced
+            if (watching && (fileWatcher == null || fileWatcher.isRunning())) return;
+            watching = true;
+            fileWatcher = null;
+        }
+        new Thread(() -> {
+            FileWatcher watcher = RootShell.watchFile(filePath, path -> {
+                FileWatcher.OnChangeListener listener = fileChangeListener;
+                if (listener != null) listener.onFileChanged(path);
+            });
+            synchronized (this) {
+                if (watcher == null) {
+                    // Another try on the next recreation
+                    watching = false;
+                } else if (cleared) {
+                    watcher.stop();
+                } else {
+                    fileWatcher = watcher;
+                }
+            }
+        }).start();
+    }
+
+    /**
+     * Called on the watcher's thread. Set to null when the activity goes away.
+     */
+    public void setFileChangeListener(FileWatcher.OnChangeListener listener) {
+        fileChangeListener = listener;
+    }
+
+    @Override
+    protected void onCleared() {
+        fileChangeListener = null;
+        FileWatcher watcher;
+        synchronized (this) {
+            cleared = true;
+            watcher = fileWatcher;
+            fileWatcher = null;
+        }
+        if (watcher != null) watcher.stop();
+    }
+}
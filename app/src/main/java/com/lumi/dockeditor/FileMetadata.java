@@ -0,0 +1,42 @@
+package com.lumi.dockeditor;
+
+/**
+ * What a root write has to put back on a file: owner, mode and SELinux label, plus the inode
+ * and ctime they were read at so a cached copy can be validated with one cheap stat.
+ */
+public class FileMetadata {
+    public final String inode;
+    public final String ctime;
+    public final String owner;
+    public final String mode;
+    public final String context;
+
+    public FileMetadata(String inode, String ctime, String owner, String mode, String context) {
+        this.inode = inode;
+        this.ctime = ctime;
+        this.owner = owner;
+        this.mode = mode;
+        this.context = context;
+    }
+
+    /**
+     * Parses a line printed by stat -c '%i %Z %u:%g %a %C'. Returns null if it doesn't fit.
+     */
+    public static FileMetadata parse(String statLine) {
+        if (statLine == null) return null;
+        String[] parts = statLine.trim().split("\\s+");
+        if (parts.length != 5) return null;
+        return new FileMetadata(parts[0], parts[1], parts[2], parts[3], parts[4]);
+    }
+
+    public String getIdentity() {
+        return inode + " " + ctime;
+    }
+
+    /**
+     * Owner, mode and label in the same layout the write script captures them.
+     */
+    public String getAttributes() {
+        return owner + " " + mode + " " + context;
+    }
+}
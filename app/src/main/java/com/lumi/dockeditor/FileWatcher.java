@@ -0,0 +1,138 @@
+package com.lumi.dockeditor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches one file from a dedicated root session and reports when it changes. Uses toybox
+ * inotifyd on the file's directory, since SharedPreferences replaces files rather than
+ * rewriting them, and falls back to polling stat once a second where inotifyd is missing.
+ */
+public class FileWatcher {
+
+    private static final long DEBOUNCE_MS = 300;
+    private static final String POLL_PREFIX = "poll ";
+    private static final String PID_PREFIX = "pid ";
+
+    public interface OnChangeListener {
+        void onFileChanged(String filePath);
+    }
+
+    private final String filePath;
+    private final OnChangeListener listener;
+    private final RootSession session;
+    private final ScheduledExecutorService debouncer;
+    private ScheduledFuture<?> pendingNotification;
+    private volatile boolean stopped;
+    // inotifyd or the poll loop; killing the session alone would leave it running
+    private int childPid;
+
+    private FileWatcher(String filePath, RootSession session, OnChangeListener listener) {
+        this.filePath = filePath;
+        this.session = session;
+        this.listener = listener;
+        this.debouncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "FileWatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts watching. Returns null if no session could be opened.
+     */
+    static FileWatcher start(ShellTransport.Factory factory, String filePath, OnChangeListener listener) {
+        RootSession session;
+        try {
+            session = RootSession.open(factory);
+        } catch (IOException e) {
+            return null;
+        }
+        if (session == null) return null;
+
+        String resolved = factory.resolvePath(filePath);
+        int slash = resolved.lastIndexOf('/');
+        String directory = slash > 0 ? resolved.substring(0, slash) : "/";
+        String name = resolved.substring(slash + 1);
+
+        FileWatcher watcher = new FileWatcher(filePath, session, listener);
+        String eventSuffix = "\t" + name;
+
+        List<String> commands = new ArrayList<>();
+        commands.add("__dock_d=" + RootShell.shellQuote(directory) + "; __dock_n=" + RootShell.shellQuote(name));
+        commands.add("if command -v inotifyd >/dev/null 2>&1; then\n"
+                + "  inotifyd - \"$__dock_d\":wnmyd &\n"
+                + "else\n"
+                + "  __dock_last=$(stat -c '%y %i %s' \"$__dock_d/$__dock_n\" 2>/dev/null)\n"
+                + "  while :; do\n"
+                + "    sleep 1\n"
+                + "    __dock_now=$(stat -c '%y %i %s' \"$__dock_d/$__dock_n\" 2>/dev/null)\n"
+                + "    [ \"$__dock_now\" = \"$__dock_last\" ] || { echo \"" + POLL_PREFIX + "$__dock_now\"; __dock_last=$__dock_now; }\n"
+                + "  done &\n"
+                + "fi\n"
+                + "__dock_w=$!; echo \"" + PID_PREFIX + "$__dock_w\"; wait $__dock_w");
+
+        // No deadline: this command is meant to run until the watcher is stopped
+        session.submit(commands, line -> {
+            if (line.startsWith(PID_PREFIX)) {
+                watcher.setChildPid(line.substring(PID_PREFIX.length()));
+            } else if (line.startsWith(POLL_PREFIX) || line.endsWith(eventSuffix)) {
+                watcher.scheduleNotification();
+            }
+        }, 0);
+        return watcher;
+    }
+
+    /**
+     * One save from SystemUX is a burst of rename, create and write events; report it once.
+     */
+    private synchronized void scheduleNotification() {
+        if (stopped || (pendingNotification != null && !pendingNotification.isDone())) return;
+        pendingNotification = debouncer.schedule(() -> {
+            if (!stopped) listener.onFileChanged(filePath);
+        }, DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void setChildPid(String pid) {
+        int parsed;
+        try {
+            parsed = Integer.parseInt(pid.trim());
+        } catch (NumberFormatException e) {
+            return;
+        }
+        synchronized (this) {
+            childPid = parsed;
+            // Stopped before the pid came back
+            if (!stopped) return;
+        }
+        killChild(parsed);
+    }
+
+    /**
+     * Kills the child from the main session, on its own thread since that may have to reopen.
+     */
+    private static void killChild(int pid) {
+        new Thread(() -> RootShell.executeCommand("kill " + pid + " 2>/dev/null")).start();
+    }
+
+    public boolean isRunning() {
+        return !stopped && !session.isClosed();
+    }
+
+    public void stop() {
+        int pid;
+        synchronized (this) {
+            if (stopped) return;
+            stopped = true;
+            pid = childPid;
+        }
+        debouncer.shutdownNow();
+        if (pid > 0) killChild(pid);
+        session.kill(new IOException("File watcher stopped."));
+    }
+}
@@ -0,0 +1,91 @@
+package com.lumi.dockeditor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * App side of the RootHelper connection. Calls are serialized, one request and its response
+ * at a time; any I/O error marks the connection dead so RootShell stops using it.
+ */
+public class HelperClient implements PrivilegedFileOps {
+
+    private final DataInputStream input;
+    private final DataOutputStream output;
+    private final Closeable connection;
+    private volatile boolean alive = true;
+
+    public HelperClient(InputStream input, OutputStream output, Closeable connection) {
+        this.input = new DataInputStream(new BufferedInputStream(input));
+        // Buffered so a frame leaves as one write, not a length write and a body write
+        this.output = new DataOutputStream(new BufferedOutputStream(output));
+        this.connection = connection;
+    }
+
+    /**
+     * Sends the token the helper was started with. Must be the first call.
+     */
+    public void authenticate(String token) throws IOException {
+        call(HelperProtocol.OP_AUTH, null, token, String.valueOf(HelperProtocol.VERSION));
+    }
+
+    private synchronized byte[] call(byte op, byte[] payload, String... args) throws IOException {
+        if (!alive) throw new IOException("Root helper connection is closed.");
+        try {
+            HelperProtocol.writeFrame(output, HelperProtocol.request(op, payload, args));
+            return HelperProtocol.unwrap(HelperProtocol.readFrame(input));
+        } catch (HelperProtocol.RemoteException e) {
+            throw e;
+        } catch (IOException e) {
+            // The stream may be out of step now, don't reuse it
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public byte[] read(String path) throws IOException {
+        return call(HelperProtocol.OP_READ, null, path);
+    }
+
+    @Override
+    public String stat(String path) throws IOException {
+        return new String(call(HelperProtocol.OP_STAT, null, path), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void writeAtomic(String path, byte[] data) throws IOException {
+        call(HelperProtocol.OP_WRITE, data, path);
+    }
+
+    @Override
+    public void setContext(String path, String context) throws IOException {
+        call(HelperProtocol.OP_SET_CONTEXT, null, path, context);
+    }
+
+    @Override
+    public void forceStop(String packageName) throws IOException {
+        call(HelperProtocol.OP_FORCE_STOP, null, packageName);
+    }
+
+    @Override
+    public boolean isAlive() {
+        return alive;
+    }
+
+    @Override
+    public void close() {
+        alive = false;
+        try {
+            connection.close();
+        } catch (IOException e) {
+            // Already gone
+        }
+    }
+}
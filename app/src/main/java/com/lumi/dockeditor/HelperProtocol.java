@@ -0,0 +1,131 @@
+package com.lumi.dockeditor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Wire format between the app and RootHelper. Every message is a frame: a 4-byte big-endian
+ * length followed by that many bytes of body. A request body is an opcode, its string arguments
+ * in modified UTF-8 and an optional payload. A response body is a status byte, then either the
+ * result payload or an error message.
+ */
+public class HelperProtocol {
+
+    public static final int VERSION = 1;
+
+    public static final byte OP_AUTH = 0;
+    public static final byte OP_READ = 1;
+    public static final byte OP_WRITE = 2;
+    public static final byte OP_STAT = 3;
+    public static final byte OP_SET_CONTEXT = 4;
+    public static final byte OP_FORCE_STOP = 5;
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_ERROR = 1;
+
+    // Far above any shared_prefs file; anything bigger is a broken stream
+    static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+
+    public static void writeFrame(DataOutputStream out, byte[] body) throws IOException {
+        out.writeInt(body.length);
+        out.write(body);
+        out.flush();
+    }
+
+    /**
+     * Blocks for the next frame. Throws EOFException when the other side hung up.
+     */
+    public static byte[] readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Bad frame length " + length);
+        }
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return body;
+    }
+
+    public static byte[] request(byte op, byte[] payload, String... args) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 + (payload != null ? payload.length : 0));
+        DataOutputStream body = new DataOutputStream(buffer);
+        body.writeByte(op);
+        body.writeByte(args.length);
+        for (String arg : args) {
+            body.writeUTF(arg);
+        }
+        if (payload != null) {
+            body.write(payload);
+        }
+        return buffer.toByteArray();
+    }
+
+    public static byte[] ok(byte[] payload) {
+        byte[] body = new byte[1 + payload.length];
+        body[0] = STATUS_OK;
+        System.arraycopy(payload, 0, body, 1, payload.length);
+        return body;
+    }
+
+    public static byte[] error(String message) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(buffer);
+        body.writeByte(STATUS_ERROR);
+        body.writeUTF(message != null ? message : "Unknown error");
+        return buffer.toByteArray();
+    }
+
+    /**
+     * A request taken apart again on the helper side.
+     */
+    public static class Request {
+        public final byte op;
+        public final String[] args;
+        public final byte[] payload;
+
+        Request(byte op, String[] args, byte[] payload) {
+            this.op = op;
+            this.args = args;
+            this.payload = payload;
+        }
+
+        public static Request parse(byte[] frame) throws IOException {
+            DataInputStream body = new DataInputStream(new ByteArrayInputStream(frame));
+            byte op = body.readByte();
+            String[] args = new String[body.readUnsignedByte()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = body.readUTF();
+            }
+            byte[] payload = new byte[body.available()];
+            body.readFully(payload);
+            return new Request(op, args, payload);
+        }
+    }
+
+    /**
+     * An operation the helper ran and reported as failed. The connection itself is still fine.
+     */
+    public static class RemoteException extends IOException {
+        RemoteException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Returns the payload of a response, or throws with the helper's error message.
+     */
+    public static byte[] unwrap(byte[] response) throws IOException {
+        if (response.length == 0) {
+            throw new IOException("Empty response from root helper");
+        }
+        if (response[0] != STATUS_OK) {
+            DataInputStream body = new DataInputStream(new ByteArrayInputStream(response, 1, response.length - 1));
+            throw new RemoteException("Root helper: " + body.readUTF());
+        }
+        byte[] payload = new byte[response.length - 1];
+        System.arraycopy(response, 1, payload, 0, payload.length);
+        return payload;
+    }
+}
@@ -0,0 +1,109 @@
+package com.lumi.dockeditor;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * App icons for the lists, held once per process by {@link App} and shared by the picker and
+ * the pinned list. Icons are loaded off the UI thread and drawn into a bitmap the size of the
+ * row's ImageView, so the full-resolution drawable is dropped right away. Bitmaps are kept in
+ * an LRU bounded by bytes, so memory use follows what was scrolled past recently rather than
+ * how many packages are installed.
+ */
+public class IconCache {
+
+    private static final int DEFAULT_SIZE_DP = 48;
+
+    private final Context context;
+    private final LruCache<String, Bitmap> bitmaps;
+    private final ExecutorService loader;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public IconCache(Context context) {
+        this.context = context.getApplicationContext();
+        // An eighth of the heap at most; a 48dp icon is tens of KB, so this still holds a few screens
+        int maxBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8);
+        this.bitmaps = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+        };
+        // A screen's worth of misses at once, as on a cold picker, loads in parallel across cores
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        this.loader = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "IconCache");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Shows the package's icon in the view: at once if it's cached, otherwise once it's loaded,
+     * provided the view hasn't been rebound to another package in the meantime. Call on the UI
+     * thread.
+     */
+    public void loadInto(ImageView view, String packageName) {
+        int size = targetSize(view);
+        String key = packageName + "@" + size;
+        view.setTag(key);
+
+        Bitmap cached = bitmaps.get(key);
+        if (cached != null) {
+            view.setImageBitmap(cached);
+            return;
+        }
+        view.setImageDrawable(null);
+        loader.execute(() -> {
+            Bitmap bitmap = bitmaps.get(key);
+            if (bitmap == null) {
+                bitmap = render(AppDisplay.getDisplayIcon(context, packageName), size);
+                bitmaps.put(key, bitmap);
+            }
+            Bitmap loaded = bitmap;
+            mainHandler.post(() -> {
+                if (key.equals(view.getTag())) {
+                    view.setImageBitmap(loaded);
+                }
+            });
+        });
+    }
+
+    /**
+     * Drops the package's icons at every size, e.g. after it was updated or removed.
+     */
+    public void invalidate(String packageName) {
+        String prefix = packageName + "@";
+        for (String key : bitmaps.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                bitmaps.remove(key);
+            }
+        }
+    }
+
+    private int targetSize(ImageView view) {
+        ViewGroup.LayoutParams params = view.getLayoutParams();
+        if (params != null && params.width > 0) {
+            return params.width;
+        }
+        return Math.round(DEFAULT_SIZE_DP * context.getResources().getDisplayMetrics().density);
+    }
+
+    private static Bitmap render(Drawable icon, int size) {
+        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        icon.setBounds(0, 0, size, size);
+        icon.draw(canvas);
+        return bitmap;
+    }
+}
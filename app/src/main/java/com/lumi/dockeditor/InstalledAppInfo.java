@@ -1,15 +1,16 @@
 package com.lumi.dockeditor;
 
-import android.graphics.drawable.Drawable;
-
 public class InstalledAppInfo {
     public String packageName;
     public String appName;
-    public Drawable icon;
+    // What the label was resolved at, to tell when it needs resolving again
+    public long lastUpdateTime;
+    public long versionCode;
     
-    public InstalledAppInfo(String packageName, String appName, Drawable icon) {
+    public InstalledAppInfo(String packageName, String appName, long lastUpdateTime, long versionCode) {
         this.packageName = packageName;
         this.appName = appName;
-        this.icon = icon;
+        this.lastUpdateTime = lastUpdateTime;
+        this.versionCode = versionCode;
     }
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package com.lumi.dockeditor;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.os.Build;
 import android.os.Bundle;
 import android.view.View;
 import android.widget.Toast;
@@ -10,14 +11,13 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.app.AppCompatDelegate;
 import com.lumi.dockeditor.databinding.ActivityMainBinding;
 import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
+import org.xmlpull.v1.XmlPullParserException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Date;
@@ -30,7 +30,7 @@ public class MainActivity extends AppCompatActivity {
     private static final String PREFS_NAME = "DockEditorPrefs";
     private static final String DARK_MODE_KEY = "darkModeEnabled";
     
-    private static final String TARGET_FILE = "/data/user/0/com.oculus.systemux/shared_prefs/AUI_PREFERENCES.xml";
+    private static final String TARGET_FILE = DockRepository.TARGET_FILE;
     private static final String BACKUP_SUBDIR = "backups";
     private static final int MAX_BACKUPS = 3;
     
@@ -64,7 +64,10 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        RootShell.shutdown();
+        // A rotation or theme toggle keeps the shell sessions and the root helper for the next instance
+        if (isFinishing()) {
+            RootShell.shutdown();
+        }
     }
     
     private void setupButtons() {
@@ -73,6 +76,7 @@ public class MainActivity extends AppCompatActivity {
         binding.restoreBackupButton.setOnClickListener(v -> showRestoreBackupDialog());
         binding.restoreDefaultButton.setOnClickListener(v -> showRestoreDefaultDialog());
         binding.restartSystemUIButton.setOnClickListener(v -> showRestartSystemUIDialog());
+        binding.diagnosticsButton.setOnClickListener(v -> showDiagnosticsDialog());
 
         // The listener for runShellButton has been removed
         
@@ -114,6 +118,13 @@ public class MainActivity extends AppCompatActivity {
                     logToUi("Root access denied.");
                 }
             });
+
+            // One helper per process; a recreated activity keeps using the one already connected
+            if (hasRoot && !RootShell.hasPrivilegedOps()) {
+                // Until the helper is up, or for good if it never comes up, the root shell does everything
+                boolean helperStarted = RootHelperLauncher.start(getApplicationContext());
+                logToUi(helperStarted ? "Root helper connected." : "Root helper unavailable, using the root shell.");
+            }
         }).start();
     }
 
@@ -125,36 +136,103 @@ public class MainActivity extends AppCompatActivity {
                     logToUi("Executing: am force-stop com.oculus.systemux");
                     Toast.makeText(this, "Restarting SystemUI...", Toast.LENGTH_SHORT).show();
                     new Thread(() -> {
-                        RootShell.executeCommand("am force-stop com.oculus.systemux");
+                        RootShell.forceStop("com.oculus.systemux");
                     }).start();
                 })
                 .setNegativeButton("Cancel", null)
                 .show();
     }
     
+    private void showDiagnosticsDialog() {
+        List<RootShellStats.Operation> operations = RootShellStats.snapshot();
+        StringBuilder text = new StringBuilder();
+        if (operations.isEmpty()) {
+            text.append("No root operations recorded yet.");
+        }
+        for (RootShellStats.Operation op : operations) {
+            text.append(op.name).append("\n")
+                    .append(String.format(Locale.US, "  %d calls, %d failed, %d B out, %d B in%n",
+                            op.count, op.failures, op.bytesSent, op.bytesReceived))
+                    .append(String.format(Locale.US, "  p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, max %.1f ms%n%n",
+                            op.getPercentileMillis(0.50), op.getPercentileMillis(0.95),
+                            op.getPercentileMillis(0.99), op.maxMillis));
+        }
+
+        new androidx.appcompat.app.AlertDialog.Builder(this)
+                .setTitle("Root Shell Diagnostics")
+                .setMessage(text.toString().trim())
+                .setPositiveButton("Export JSON", (dialog, which) -> exportDiagnostics(operations))
+                .setNeutralButton("Reset", (dialog, which) -> {
+                    RootShellStats.reset();
+                    logToUi("Diagnostics counters reset.");
+                })
+                .setNegativeButton("Close", null)
+                .show();
+    }
+
+    private void exportDiagnostics(List<RootShellStats.Operation> operations) {
+        new Thread(() -> {
+            try {
+                JSONObject report = new JSONObject();
+                report.put("timestamp", System.currentTimeMillis());
+                report.put("device", Build.MODEL);
+                report.put("firmware", Build.DISPLAY);
+                report.put("fingerprint", Build.FINGERPRINT);
+                report.put("rootProvider", RootShell.executeRead("su -v").trim());
+
+                JSONArray ops = new JSONArray();
+                for (RootShellStats.Operation op : operations) {
+                    JSONObject entry = new JSONObject();
+                    entry.put("name", op.name);
+                    entry.put("count", op.count);
+                    entry.put("failures", op.failures);
+                    entry.put("bytesSent", op.bytesSent);
+                    entry.put("bytesReceived", op.bytesReceived);
+                    entry.put("meanMs", op.getMeanMillis());
+                    entry.put("p50Ms", op.getPercentileMillis(0.50));
+                    entry.put("p95Ms", op.getPercentileMillis(0.95));
+                    entry.put("p99Ms", op.getPercentileMillis(0.99));
+                    entry.put("maxMs", op.maxMillis);
+                    ops.put(entry);
+                }
+                report.put("operations", ops);
+
+                String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
+                File exportFile = new File(getExternalFilesDir(null), "root_diagnostics_" + timestamp + ".json");
+                FileOutputStream fos = new FileOutputStream(exportFile);
+                fos.write(report.toString(2).getBytes("UTF-8"));
+                fos.close();
+
+                logToUi("Diagnostics exported to " + exportFile.getAbsolutePath());
+                runOnUiThread(() -> Toast.makeText(this, "Diagnostics exported", Toast.LENGTH_SHORT).show());
+            } catch (Exception e) {
+                logToUi("Diagnostics export error: " + e.getMessage());
+                runOnUiThread(() -> Toast.makeText(this, "Export error: " + e.getMessage(),
+                        Toast.LENGTH_SHORT).show());
+            }
+        }).start();
+    }
+
     private void loadAndParseFile() {
         logToUi("Loading and parsing file...");
         new Thread(() -> {
             try {
                 logToUi("Reading content from target file " + TARGET_FILE + "...");
 
-                String content = RootShell.getFileContent(TARGET_FILE);
-                if (content == null) {
+                // Served from RootShell's cache when the file hasn't changed since the last read
+                List<AppInfo> parsedAppList = loadDock();
+                if (parsedAppList == null) {
                     runOnUiThread(() -> Toast.makeText(this, "Failed to read original file", Toast.LENGTH_SHORT).show());
                     logToUi("Failed to read original file. Output: " + RootShell.getLastCommandOutput());
                     return;
                 }
 
-                logToUi("Parsing XML content...");
-                ArrayList<AppInfo> parsedAppList = parseAuiPreferences(content);
-
                 runOnUiThread(() -> {
                     Toast.makeText(this, "File loaded successfully, opening editor...", Toast.LENGTH_SHORT).show();
                     logToUi("File loaded and parsed successfully. Launching editor.");
                     
-                    Intent intent = new Intent(MainActivity.this, EditPinnedActivity.class);
-                    intent.putParcelableArrayListExtra("appList", parsedAppList);
-                    startActivity(intent);
+                    // The editor picks the list up from the repository
+                    startActivity(new Intent(MainActivity.this, EditPinnedActivity.class));
                 });
 
             } catch (Exception e) {
@@ -165,30 +243,16 @@ public class MainActivity extends AppCompatActivity {
         }).start();
     }
     
-    private ArrayList<AppInfo> parseAuiPreferences(String xmlContent) {
-        ArrayList<AppInfo> localAppList = new ArrayList<>();
+    private List<AppInfo> loadDock() {
         try {
-            int startIndex = xmlContent.indexOf("<string name=\"aui_bar_apps_pinned\">") + "<string name=\"aui_bar_apps_pinned\">".length();
-            int endIndex = xmlContent.indexOf("</string>", startIndex);
-
-            if (startIndex == -1 || endIndex == -1) {
-                throw new Exception("Could not find pinned apps data in file");
-            }
-
-            String jsonString = xmlContent.substring(startIndex, endIndex);
-            jsonString = jsonString.replace("&quot;", "\"").replace("&amp;", "&");
-
-            JSONArray appsArray = new JSONArray(jsonString);
-            logToUi("Found " + appsArray.length() + " pinned apps.");
-
-            for (int i = 0; i < appsArray.length(); i++) {
-                JSONObject appObj = appsArray.getJSONObject(i);
-                localAppList.add(new AppInfo(appObj.toString()));
+            List<AppInfo> localAppList = App.getDockRepository().load();
+            if (localAppList != null) {
+                logToUi("Found " + localAppList.size() + " pinned apps.");
             }
             return localAppList;
 
-        } catch (JSONException e) {
-            logToUi("JSON parsing failed: " + e.getMessage());
+        } catch (XmlPullParserException e) {
+            logToUi("XML parsing failed: " + e.getMessage());
             throw new RuntimeException("Failed to parse app data", e);
         } catch (Exception e) {
             logToUi("Parsing error: " + e.getMessage());
@@ -200,7 +264,7 @@ public class MainActivity extends AppCompatActivity {
 
     private void checkSelinuxStatus() {
         new Thread(() -> {
-            String output = RootShell.executeCommand("getenforce").trim();
+            String output = RootShell.executeRead("getenforce").trim();
             runOnUiThread(() -> {
                 if ("Enforcing".equalsIgnoreCase(output)) {
                     binding.selinuxStatusText.setText("SELinux: Enforcing ⚠️");
@@ -0,0 +1,40 @@
+package com.lumi.dockeditor;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.Uri;
+
+/**
+ * Applies installs, updates, changes and removals to the app catalog and icon cache one
+ * package at a time while the app runs. Registered by {@link App}; anything that happened
+ * while the app wasn't running is caught by the catalog's next refresh instead.
+ */
+public class PackageChangeReceiver extends BroadcastReceiver {
+
+    public static IntentFilter createFilter() {
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addDataScheme("package");
+        return filter;
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        Uri data = intent.getData();
+        if (data == null) return;
+        String packageName = data.getSchemeSpecificPart();
+
+        // An update sends REMOVED and ADDED with EXTRA_REPLACING before REPLACED; only the last counts
+        boolean replacing = intent.getBooleanExtra(Intent.EXTRA_REPLACING, false);
+        String action = intent.getAction();
+        if (replacing && !Intent.ACTION_PACKAGE_REPLACED.equals(action)) return;
+
+        App.getIconCache().invalidate(packageName);
+        App.getAppCatalog().packageChangedAsync(packageName);
+    }
+}
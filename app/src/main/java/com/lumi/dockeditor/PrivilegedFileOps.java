@@ -0,0 +1,31 @@
+package com.lumi.dockeditor;
+
+import java.io.IOException;
+
+/**
+ * File operations done as root without going through a shell. RootShell uses an
+ * implementation when one is set and falls back to the su session when a call fails.
+ */
+public interface PrivilegedFileOps {
+
+    byte[] read(String path) throws IOException;
+
+    /**
+     * Size, mtime and inode in the layout of {@link RootShell#getFileStat(String)}.
+     */
+    String stat(String path) throws IOException;
+
+    /**
+     * Replaces the file through a temp file and a rename, carrying over owner, mode and SELinux
+     * label of the file it replaces.
+     */
+    void writeAtomic(String path, byte[] data) throws IOException;
+
+    void setContext(String path, String context) throws IOException;
+
+    void forceStop(String packageName) throws IOException;
+
+    boolean isAlive();
+
+    void close();
+}
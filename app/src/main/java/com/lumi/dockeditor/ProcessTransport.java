@@ -0,0 +1,50 @@
+package com.lumi.dockeditor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Runs a command such as "su --mount-master" and uses its standard streams as the shell.
+ */
+public class ProcessTransport implements ShellTransport {
+    private final Process process;
+
+    public ProcessTransport(String command) throws IOException {
+        process = Runtime.getRuntime().exec(command);
+    }
+
+    public static Factory factory(String command) {
+        return () -> new ProcessTransport(command);
+    }
+
+    @Override
+    public OutputStream getStdin() {
+        return process.getOutputStream();
+    }
+
+    @Override
+    public InputStream getStdout() {
+        return process.getInputStream();
+    }
+
+    @Override
+    public InputStream getStderr() {
+        return process.getErrorStream();
+    }
+
+    @Override
+    public boolean isAlive() {
+        return process.isAlive();
+    }
+
+    @Override
+    public void waitFor() throws InterruptedException {
+        process.waitFor();
+    }
+
+    @Override
+    public void destroy() {
+        process.destroyForcibly();
+    }
+}
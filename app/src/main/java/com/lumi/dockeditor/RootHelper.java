@@ -0,0 +1,226 @@
+package com.lumi.dockeditor;
+
+import android.net.LocalServerSocket;
+import android.net.LocalSocket;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Root side of {@link HelperClient}. Started once through app_process from the app's APK and
+ * serves {@link HelperProtocol} on an abstract Unix socket. It takes a single connection, and
+ * only from the app's uid holding the token from its environment, then exits when that
+ * connection closes so a helper never outlives the app session that started it.
+ *
+ * Usage: app_process / com.lumi.dockeditor.RootHelper &lt;socket name&gt; &lt;app uid&gt;
+ * with DOCK_HELPER_TOKEN set.
+ */
+public class RootHelper {
+
+    public static final String TOKEN_ENV = "DOCK_HELPER_TOKEN";
+    private static final String SELINUX_XATTR = "security.selinux";
+    // Owner and mode SystemUX gives its shared_prefs, for files that don't exist yet
+    private static final int DEFAULT_UID = 1000;
+    private static final int DEFAULT_MODE = 0666;
+    private static final long CONNECT_TIMEOUT_MS = 15000;
+
+    private static volatile boolean connected;
+
+    public static void main(String[] args) {
+        String token = System.getenv(TOKEN_ENV);
+        if (args.length < 2 || token == null || token.isEmpty()) {
+            System.err.println("Usage: RootHelper <socket name> <app uid>, with " + TOKEN_ENV + " set");
+            System.exit(2);
+        }
+        int appUid = Integer.parseInt(args[1]);
+
+        // The app gave up or died before connecting
+        Thread timeout = new Thread(() -> {
+            try {
+                Thread.sleep(CONNECT_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (!connected) System.exit(1);
+        });
+        timeout.setDaemon(true);
+        timeout.start();
+
+        try {
+            LocalServerSocket server = new LocalServerSocket(args[0]);
+            while (true) {
+                LocalSocket socket = server.accept();
+                int peerUid = socket.getPeerCredentials().getUid();
+                if (peerUid != appUid && peerUid != 0) {
+                    socket.close();
+                    continue;
+                }
+                if (serve(socket, token)) break;
+            }
+            server.close();
+        } catch (IOException e) {
+            System.err.println("RootHelper: " + e.getMessage());
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Runs one connection. Returns false if it never authenticated, so the next one is accepted.
+     */
+    private static boolean serve(LocalSocket socket, String token) {
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            HelperProtocol.Request auth = HelperProtocol.Request.parse(HelperProtocol.readFrame(input));
+            if (auth.op != HelperProtocol.OP_AUTH || auth.args.length < 2 || !token.equals(auth.args[0])) {
+                HelperProtocol.writeFrame(output, HelperProtocol.error("Not authorized"));
+                return false;
+            }
+            if (!String.valueOf(HelperProtocol.VERSION).equals(auth.args[1])) {
+                HelperProtocol.writeFrame(output, HelperProtocol.error("Protocol version " + HelperProtocol.VERSION + " expected"));
+                return false;
+            }
+            connected = true;
+            HelperProtocol.writeFrame(output, HelperProtocol.ok(new byte[0]));
+
+            while (true) {
+                HelperProtocol.Request request = HelperProtocol.Request.parse(HelperProtocol.readFrame(input));
+                byte[] response;
+                try {
+                    response = HelperProtocol.ok(handle(request));
+                } catch (Exception e) {
+                    response = HelperProtocol.error(e.getMessage());
+                }
+                HelperProtocol.writeFrame(output, response);
+            }
+        } catch (EOFException e) {
+            // The app closed the connection
+        } catch (IOException e) {
+            System.err.println("RootHelper: " + e.getMessage());
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nothing left to do
+            }
+        }
+        return connected;
+    }
+
+    private static byte[] handle(HelperProtocol.Request request) throws Exception {
+        switch (request.op) {
+            case HelperProtocol.OP_READ:
+                return read(request.args[0]);
+            case HelperProtocol.OP_STAT: {
+                StructStat stat = Os.stat(request.args[0]);
+                // Same layout as RootShell's stat key, nanoseconds included
+                String mtime = stat.st_mtim.tv_sec + "." + String.format(Locale.US, "%09d", stat.st_mtim.tv_nsec);
+                return (stat.st_size + " " + mtime + " " + stat.st_ino).getBytes(StandardCharsets.UTF_8);
+            }
+            case HelperProtocol.OP_WRITE:
+                writeAtomic(request.args[0], request.payload);
+                return new byte[0];
+            case HelperProtocol.OP_SET_CONTEXT:
+                setContext(request.args[0], request.args[1]);
+                return new byte[0];
+            case HelperProtocol.OP_FORCE_STOP:
+                forceStop(request.args[0]);
+                return new byte[0];
+            default:
+                throw new IOException("Unknown operation " + request.op);
+        }
+    }
+
+    private static byte[] read(String path) throws IOException {
+        try (FileInputStream input = new FileInputStream(path)) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream((int) Math.max(0, input.getChannel().size()));
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                content.write(buffer, 0, read);
+            }
+            return content.toByteArray();
+        }
+    }
+
+    /**
+     * Writes next to the target, syncs, copies owner, mode and label over and renames into place.
+     */
+    private static void writeAtomic(String path, byte[] data) throws IOException, ErrnoException {
+        int uid = DEFAULT_UID;
+        int gid = DEFAULT_UID;
+        int mode = DEFAULT_MODE;
+        String context;
+        try {
+            StructStat existing = Os.stat(path);
+            uid = existing.st_uid;
+            gid = existing.st_gid;
+            mode = existing.st_mode & 07777;
+            context = getContext(path);
+        } catch (ErrnoException e) {
+            if (e.errno != OsConstants.ENOENT) throw e;
+            context = getContext(path.substring(0, Math.max(1, path.lastIndexOf('/'))));
+        }
+
+        String temp = path + ".dockeditor-" + Os.getpid() + ".tmp";
+        try {
+            try (FileOutputStream output = new FileOutputStream(temp)) {
+                output.write(data);
+                FileDescriptor fd = output.getFD();
+                fd.sync();
+            }
+            Os.chown(temp, uid, gid);
+            Os.chmod(temp, mode);
+            if (context != null) setContext(temp, context);
+            Os.rename(temp, path);
+        } finally {
+            // Only still there if something failed before the rename
+            new File(temp).delete();
+        }
+    }
+
+    private static String getContext(String path) {
+        try {
+            byte[] value = Os.getxattr(path, SELINUX_XATTR);
+            int length = value.length;
+            while (length > 0 && value[length - 1] == 0) length--;
+            return new String(value, 0, length, StandardCharsets.UTF_8);
+        } catch (ErrnoException e) {
+            return null;
+        }
+    }
+
+    private static void setContext(String path, String context) throws ErrnoException {
+        byte[] value = (context + "\0").getBytes(StandardCharsets.UTF_8);
+        Os.setxattr(path, SELINUX_XATTR, value, 0);
+    }
+
+    private static void forceStop(String packageName) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder("am", "force-stop", packageName).redirectErrorStream(true).start();
+        byte[] buffer = new byte[1024];
+        while (process.getInputStream().read(buffer) != -1) {
+            // am prints nothing useful, but it must not block on a full pipe
+        }
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new IOException("am force-stop exited with " + exitCode);
+        }
+    }
+}
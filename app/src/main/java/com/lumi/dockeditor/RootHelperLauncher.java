@@ -0,0 +1,75 @@
+package com.lumi.dockeditor;
+
+import android.content.Context;
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+import android.os.Process;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Starts {@link RootHelper} through the root shell and connects to it. Once connected,
+ * RootShell sends file operations to the helper instead of the shell.
+ */
+public class RootHelperLauncher {
+
+    private static final int CONNECT_ATTEMPTS = 40;
+    private static final long CONNECT_RETRY_MS = 50;
+
+    /**
+     * Blocks until the helper is up and authenticated, so call it off the UI thread. Returns
+     * false if it couldn't be started; RootShell then keeps using the shell for everything.
+     * Does nothing if a helper is already connected, so every MainActivity can call it.
+     */
+    public static synchronized boolean start(Context context) {
+        if (RootShell.hasPrivilegedOps()) return true;
+
+        SecureRandom random = new SecureRandom();
+        String socketName = "dockeditor_helper_" + Long.toHexString(random.nextLong() & Long.MAX_VALUE);
+        byte[] tokenBytes = new byte[24];
+        random.nextBytes(tokenBytes);
+        StringBuilder token = new StringBuilder();
+        for (byte b : tokenBytes) {
+            token.append(String.format("%02x", b));
+        }
+
+        // The token goes through the environment; unlike the command line it isn't world-readable in /proc
+        String apk = context.getApplicationInfo().sourceDir;
+        List<String> commands = new ArrayList<>();
+        commands.add(RootHelper.TOKEN_ENV + "=" + RootShell.shellQuote(token.toString())
+                + " CLASSPATH=" + RootShell.shellQuote(apk)
+                + " app_process / " + RootHelper.class.getName()
+                + " " + RootShell.shellQuote(socketName) + " " + Process.myUid()
+                + " </dev/null >/dev/null 2>&1 &");
+        if (!RootShell.run(commands).isSuccess()) {
+            return false;
+        }
+
+        for (int attempt = 0; attempt < CONNECT_ATTEMPTS; attempt++) {
+            LocalSocket socket = new LocalSocket();
+            try {
+                socket.connect(new LocalSocketAddress(socketName, LocalSocketAddress.Namespace.ABSTRACT));
+                HelperClient client = new HelperClient(socket.getInputStream(), socket.getOutputStream(), socket);
+                client.authenticate(token.toString());
+                RootShell.setPrivilegedOps(client);
+                return true;
+            } catch (IOException e) {
+                try {
+                    socket.close();
+                } catch (IOException closeError) {
+                    // Never connected
+                }
+            }
+            try {
+                Thread.sleep(CONNECT_RETRY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,345 @@
+package com.lumi.dockeditor;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One long-running root shell. Commands are written straight into the pipe and two reader
+ * threads, one per output stream, hand each caller back the output that belongs to its own
+ * end marker together with its exit status.
+ */
+public class RootSession {
+
+    private static final String END_MARKER = "--END_OF_COMMAND_";
+    private static final AtomicLong sessionCounter = new AtomicLong();
+    private static final long OPEN_TIMEOUT_SECONDS = 60;
+
+    private final ShellTransport transport;
+    private final DataOutputStream output;
+    private final BufferedReader stdout;
+    private final BufferedReader stderr;
+
+    private final Object writeLock = new Object();
+    // The shell finishes commands in the order they were written, so each stream is a FIFO
+    private final ConcurrentLinkedQueue<PendingCommand> pending = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<PendingCommand> pendingStderr = new ConcurrentLinkedQueue<>();
+    private final AtomicLong commandCounter = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final String markerPrefix;
+
+    private volatile boolean closed;
+    private volatile Exception failure;
+
+    private static class PendingCommand {
+        final String marker;
+        // Either stdout is collected or handed to the consumer line by line
+        final StringBuilder output;
+        final RootShell.LineConsumer consumer;
+        final StringBuilder errorOutput = new StringBuilder();
+        final CompletableFuture<CommandResult> future = new CompletableFuture<>();
+        final long timeoutNanos;
+        // System.nanoTime() after which the watchdog gives up on this command. Stays 0 until
+        // the command reaches the head of the pipe, so time spent queued behind others is free
+        private volatile long deadline;
+        RuntimeException consumerError;
+        int exitCode = -1;
+        boolean stdoutDone;
+        boolean stderrDone;
+
+        PendingCommand(String marker, RootShell.LineConsumer consumer, long timeoutMillis) {
+            this.marker = marker;
+            this.consumer = consumer;
+            this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeoutMillis));
+            this.output = consumer == null ? new StringBuilder() : null;
+        }
+
+        /**
+         * Starts the deadline, once; both the submitter and the reader may see it become head.
+         */
+        synchronized void startClock() {
+            if (timeoutNanos > 0 && deadline == 0) {
+                deadline = System.nanoTime() + timeoutNanos;
+            }
+        }
+
+        boolean isOverdue(long now) {
+            long due = deadline;
+            return due != 0 && now - due > 0;
+        }
+
+        void accept(String line, boolean terminated) {
+            if (consumer == null) {
+                output.append(line);
+                if (terminated) output.append("\n");
+                return;
+            }
+            if (consumerError != null) return;
+            try {
+                consumer.onLine(line);
+            } catch (RuntimeException e) {
+                // Keep draining up to the marker so the next command still lines up
+                consumerError = e;
+            }
+        }
+
+        /**
+         * Called once by each reader thread. The second call completes the future.
+         */
+        synchronized boolean streamDone(boolean isStdout) {
+            if (isStdout) stdoutDone = true; else stderrDone = true;
+            if (!stdoutDone || !stderrDone) return false;
+
+            // False if the session was torn down and already failed this command
+            if (consumerError != null) {
+                return future.completeExceptionally(consumerError);
+            }
+            return future.complete(new CommandResult(exitCode,
+                    output != null ? output.toString() : null, errorOutput.toString()));
+        }
+    }
+
+    private RootSession(ShellTransport transport) {
+        this.transport = transport;
+        output = new DataOutputStream(transport.getStdin());
+        stdout = new BufferedReader(new InputStreamReader(transport.getStdout(), StandardCharsets.UTF_8));
+        stderr = new BufferedReader(new InputStreamReader(transport.getStderr(), StandardCharsets.UTF_8));
+        markerPrefix = END_MARKER + sessionCounter.incrementAndGet() + "_";
+
+        Thread readerThread = new Thread(this::readStdout, "RootSession-stdout");
+        readerThread.setDaemon(true);
+        readerThread.start();
+
+        // Nothing may ever leave stderr unread, or a chatty command stalls the whole session
+        Thread drainerThread = new Thread(this::readStderr, "RootSession-stderr");
+        drainerThread.setDaemon(true);
+        drainerThread.start();
+    }
+
+    /**
+     * Starts the shell and checks that it really runs as uid 0. Returns null when it doesn't.
+     */
+    public static RootSession open(ShellTransport.Factory factory) throws IOException {
+        RootSession session = new RootSession(factory.open());
+        try {
+            // Generous, the root manager may be showing its grant prompt
+            CommandResult id = session.submit("id").get(OPEN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (id.stdout.contains("uid=0")) {
+                return session;
+            }
+        } catch (Exception e) {
+            // Fall through and tear the shell down
+        }
+        session.kill(new IOException("Root shell did not start."));
+        return null;
+    }
+
+    public CompletableFuture<CommandResult> submit(String command) {
+        return submit(java.util.Collections.singletonList(command));
+    }
+
+    /**
+     * Queues the commands behind anything already in the pipe. The returned future completes
+     * with the output of exactly these commands once their markers come back. The exit code is
+     * that of the last command that failed, or 0 if all of them succeeded.
+     */
+    public CompletableFuture<CommandResult> submit(List<String> commands) {
+        return submit(commands, null, 0);
+    }
+
+    /**
+     * Streaming variant of {@link #submit(List)}: every stdout line is passed to the consumer on
+     * the reader thread as soon as it arrives and the result carries a null stdout. A positive
+     * timeout is the time the watchdog allows, counted from when the shell gets to these
+     * commands rather than from submission, before it treats the session as hung.
+     */
+    public CompletableFuture<CommandResult> submit(List<String> commands, RootShell.LineConsumer consumer, long timeoutMillis) {
+        PendingCommand command = new PendingCommand(markerPrefix + commandCounter.incrementAndGet() + "--", consumer, timeoutMillis);
+
+        // Status is checked on its own line after each command, so commands may carry here-documents
+        StringBuilder script = new StringBuilder("__dock_status=0\n");
+        for (String line : commands) {
+            script.append(line).append("\n");
+            script.append("__dock_rc=$?; [ \"$__dock_rc\" = 0 ] || __dock_status=$__dock_rc\n");
+        }
+        script.append("echo ").append(command.marker).append(" $__dock_status\n");
+        script.append("echo ").append(command.marker).append(" >&2\n");
+        byte[] scriptBytes = script.toString().getBytes(StandardCharsets.UTF_8);
+
+        synchronized (writeLock) {
+            if (closed) {
+                command.future.completeExceptionally(new IOException("Root shell is closed."));
+                return command.future;
+            }
+            // Enqueue before writing so the readers can never see a marker they don't know yet
+            pending.add(command);
+            pendingStderr.add(command);
+            inFlight.incrementAndGet();
+            // Otherwise the reader starts it when the command ahead completes
+            if (pending.peek() == command) command.startClock();
+            try {
+                output.write(scriptBytes);
+                output.flush();
+            } catch (IOException e) {
+                pending.remove(command);
+                pendingStderr.remove(command);
+                inFlight.decrementAndGet();
+                command.future.completeExceptionally(e);
+            }
+        }
+        return command.future;
+    }
+
+    /**
+     * Number of submissions written to the pipe that haven't completed yet.
+     */
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * True if the shell died underneath us or the command at the head of the pipe ran past its
+     * deadline.
+     */
+    public boolean isStalled() {
+        if (closed) return false;
+        if (!transport.isAlive()) return true;
+        PendingCommand head = pending.peek();
+        if (head == null) head = pendingStderr.peek();
+        return head != null && head.isOverdue(System.nanoTime());
+    }
+
+    /**
+     * Tears the shell down without waiting for the shell. Everything still queued fails with
+     * the given cause.
+     */
+    public void kill(Exception cause) {
+        failure = cause;
+        synchronized (writeLock) {
+            closed = true;
+        }
+        transport.destroy();
+        failPending();
+    }
+
+    public void close() {
+        synchronized (writeLock) {
+            if (closed) return;
+            closed = true;
+            try {
+                output.writeBytes("exit\n");
+                output.flush();
+                output.close();
+            } catch (IOException e) {
+                // The shell is already gone
+            }
+        }
+        try {
+            transport.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            transport.destroy();
+        }
+    }
+
+    private void readStdout() {
+        try {
+            String line;
+            while ((line = stdout.readLine()) != null) {
+                PendingCommand current = pending.peek();
+                if (current == null) {
+                    continue;
+                }
+
+                int markerIndex = line.indexOf(current.marker);
+                if (markerIndex == -1) {
+                    current.accept(line, true);
+                    continue;
+                }
+
+                // Content printed without a trailing newline ends up in front of the marker
+                if (markerIndex > 0) {
+                    current.accept(line.substring(0, markerIndex), false);
+                }
+                try {
+                    current.exitCode = Integer.parseInt(line.substring(markerIndex + current.marker.length()).trim());
+                } catch (NumberFormatException e) {
+                    current.exitCode = -1;
+                }
+                pending.poll();
+                PendingCommand next = pending.peek();
+                if (next != null) next.startClock();
+                if (current.streamDone(true)) {
+                    inFlight.decrementAndGet();
+                }
+            }
+        } catch (IOException e) {
+            // Stream closed, fall through and fail whatever is still waiting
+        }
+        terminate();
+    }
+
+    private void readStderr() {
+        try {
+            String line;
+            while ((line = stderr.readLine()) != null) {
+                PendingCommand current = pendingStderr.peek();
+                if (current == null) {
+                    continue;
+                }
+
+                int markerIndex = line.indexOf(current.marker);
+                if (markerIndex == -1) {
+                    current.errorOutput.append(line).append("\n");
+                    continue;
+                }
+
+                if (markerIndex > 0) {
+                    current.errorOutput.append(line, 0, markerIndex);
+                }
+                pendingStderr.poll();
+                if (current.streamDone(false)) {
+                    inFlight.decrementAndGet();
+                }
+            }
+        } catch (IOException e) {
+            // Stream closed
+        }
+        terminate();
+    }
+
+    private void terminate() {
+        synchronized (writeLock) {
+            closed = true;
+        }
+        failPending();
+    }
+
+    private void failPending() {
+        Exception terminated = failure != null ? failure : new IOException("Root shell terminated.");
+        PendingCommand leftover;
+        while ((leftover = pending.poll()) != null) {
+            if (leftover.future.completeExceptionally(terminated)) {
+                inFlight.decrementAndGet();
+            }
+        }
+        while ((leftover = pendingStderr.poll()) != null) {
+            if (leftover.future.completeExceptionally(terminated)) {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+}
@@ -1,141 +1,952 @@
 package com.lumi.dockeditor;
 
 import java.io.BufferedReader;
-import java.io.DataOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.List;
+import java.util.Map;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 public class RootShell {
 
-    private static Process rootProcess;
-    private static DataOutputStream rootOutput;
-    private static BufferedReader rootStdout;
-    private static BufferedReader rootStderr;
+    private static final int DEFAULT_READ_POOL_SIZE = 2;
+    private static final long DEFAULT_TIMEOUT_MS = 15000;
+    private static final long WATCHDOG_INTERVAL_MS = 1000;
+    private static final int READ_RETRIES = 1;
+    private static final long REOPEN_BACKOFF_MS = 10000;
 
-    private static String lastCommandOutput = "";
+    private static final String UPLOAD_DIR = "/data/local/tmp";
+    private static final String UPLOAD_EOF = "DOCKEDITOR_UPLOAD_EOF";
+    private static final int BASE64_LINE_LENGTH = 76;
+    // Owner, mode and SELinux label, in the order the restore step expects them
+    private static final String METADATA_FORMAT = "%u:%g %a %C";
+    private static final AtomicLong uploadCounter = new AtomicLong();
+    private static final int CONTENT_CACHE_MAX_CHARS = 256 * 1024;
+    private static final int STREAM_PIPE_BYTES = 16 * 1024;
+    // Reads of a compressed transfer start with this in front of the stat line
+    private static final String GZIP_PREFIX = "gz ";
+    private static final int DEFAULT_COMPRESSION_THRESHOLD = 16 * 1024;
+
+    // Writes to AUI_PREFERENCES.xml and anything else that changes state stay on this session, in order
+    private static volatile RootSession session;
+    // Extra sessions that read-only commands fan out across
+    private static volatile RootSession[] readSessions = new RootSession[0];
+    private static int readPoolSize = DEFAULT_READ_POOL_SIZE;
+    // Remembered so a dead or hung session can be brought back the same way
+    private static volatile ShellTransport.Factory transportFactory;
+    private static ScheduledExecutorService watchdog;
+    private static volatile long nextReopenAt;
+    // Serializes reopening dead sessions, which can block on su for a long time
+    private static final Object reopenLock = new Object();
+    // Files larger than this cross the pipe gzip-compressed, when the device has gzip
+    private static volatile int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+    // Probed once per init, null until then
+    private static volatile Boolean gzipAvailable;
+    // The root helper, when one is connected; file operations try it before the shell
+    private static volatile PrivilegedFileOps privilegedOps;
+
+    private static volatile String lastCommandOutput = "";
+
+    // Last content read per path, together with the size/mtime/inode it was read at
+    private static final Map<String, CachedContent> contentCache = new ConcurrentHashMap<>();
+    // Owner, mode and label of files we wrote, keyed by path
+    private static final Map<String, FileMetadata> metadataCache = new ConcurrentHashMap<>();
+    // Size/mtime/inode each path had when it was last read, so edits made since can be spotted
+    private static final Map<String, String> readStats = new ConcurrentHashMap<>();
+
+    public interface LineConsumer {
+        void onLine(String line);
+    }
+
+    private static class CachedContent {
+        final String stat;
+        final String content;
+
+        CachedContent(String stat, String content) {
+            this.stat = stat;
+            this.content = content;
+        }
+    }
+
+    /**
+     * Gunzips a base64 transfer on its own thread while the lines are still coming in, so a
+     * streamed read holds a pipe buffer rather than the whole payload.
+     */
+    private static class StreamedGunzip {
+        private final PipedOutputStream encoded = new PipedOutputStream();
+        private final Thread thread;
+        private volatile IOException failure;
+        // Thrown by the consumer; an uncaught exception here would take the whole process down
+        private volatile RuntimeException consumerError;
+
+        StreamedGunzip(LineConsumer consumer) {
+            PipedInputStream input;
+            try {
+                input = new PipedInputStream(encoded, STREAM_PIPE_BYTES);
+            } catch (IOException e) {
+                // Only thrown for a stream that is already connected
+                throw new IllegalStateException(e);
+            }
+            thread = new Thread(() -> {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        new GZIPInputStream(Base64.getMimeDecoder().wrap(input)), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        consumer.onLine(line);
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                } catch (RuntimeException e) {
+                    // Closing the reader above makes further writes fail, so the transfer is dropped
+                    consumerError = e;
+                }
+            }, "RootShell-gunzip");
+            thread.start();
+        }
+
+        /**
+         * Called on the session's reader thread; blocks while the pipe is full.
+         */
+        void write(String line) {
+            if (failure != null || consumerError != null) return;
+            try {
+                encoded.write(line.getBytes(StandardCharsets.US_ASCII));
+                encoded.write('\n');
+            } catch (IOException e) {
+                // The decoder gave up and closed its end; its own error is the one reported
+                if (failure == null) failure = e;
+            }
+        }
+
+        /**
+         * Ends the input and waits for the remaining lines. Returns the failure, if any, and
+         * rethrows on the caller's thread whatever the consumer threw.
+         */
+        IOException finish() {
+            try {
+                encoded.close();
+                thread.join();
+            } catch (IOException e) {
+                if (failure == null) failure = e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null) failure = new IOException("Interrupted while decoding.");
+            }
+            if (consumerError != null) throw consumerError;
+            return failure;
+        }
+    }
 
     public static boolean initRootShell(String suCommand) {
-        if (rootProcess != null) return true;
+        return initRootShell(ProcessTransport.factory(suCommand));
+    }
+
+    /**
+     * Opens the main session and the read pool through the given transport. Off-device this can
+     * be a plain local shell standing in for su.
+     */
+    public static synchronized boolean initRootShell(ShellTransport.Factory factory) {
+        if (session != null && !session.isClosed()) return true;
+        long start = System.nanoTime();
+        session = openSession(factory);
+        RootShellStats.record("initRootShell", start, session != null, 0, 0);
+        if (session == null) return false;
+
+        transportFactory = factory;
+        RootSession[] readers = new RootSession[readPoolSize];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = openSession(factory);
+        }
+        readSessions = readers;
+
+        if (watchdog == null) {
+            watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "RootShell-watchdog");
+                thread.setDaemon(true);
+                return thread;
+            });
+            watchdog.scheduleWithFixedDelay(RootShell::checkSessions,
+                    WATCHDOG_INTERVAL_MS, WATCHDOG_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    private static RootSession openSession(ShellTransport.Factory factory) {
+        long start = System.nanoTime();
+        RootSession opened = null;
         try {
-            rootProcess = Runtime.getRuntime().exec(suCommand);
-            rootOutput = new DataOutputStream(rootProcess.getOutputStream());
-            rootStdout = new BufferedReader(new InputStreamReader(rootProcess.getInputStream()));
-            rootStderr = new BufferedReader(new InputStreamReader(rootProcess.getErrorStream()));
-
-            rootOutput.writeBytes("id\n");
-            rootOutput.flush();
-            String line = rootStdout.readLine();
-            if (line != null && line.contains("uid=0")) {
-                return true;
-            } else {
-                shutdown();
-                return false;
-            }
+            opened = RootSession.open(factory);
         } catch (Exception e) {
             lastCommandOutput = "Failed to initialize root shell: " + e.getMessage();
-            shutdown();
-            return false;
         }
+        RootShellStats.record("openSession", start, opened != null, 0, 0);
+        return opened;
     }
 
-    public static void shutdown() {
-        if (rootProcess != null) {
-            try {
-                rootOutput.writeBytes("exit\n");
-                rootOutput.flush();
-                rootOutput.close();
-                rootStdout.close();
-                rootStderr.close();
-                rootProcess.waitFor();
-            } catch (IOException | InterruptedException e) {
-                Thread.currentThread().interrupt();
-            } finally {
-                rootProcess.destroy();
-                rootProcess = null;
+    /**
+     * Runs on the watchdog thread. Kills sessions whose process died or whose current command
+     * blew its deadline, then reopens them through the original transport.
+     */
+    private static void checkSessions() {
+        ShellTransport.Factory factory = transportFactory;
+        if (factory == null) return;
+
+        RootSession current = session;
+        if (current != null && current.isStalled()) {
+            current.kill(new TimeoutException("Root shell stopped responding."));
+        }
+        RootSession[] readers = readSessions;
+        for (RootSession reader : readers) {
+            if (reader != null && reader.isStalled()) {
+                reader.kill(new TimeoutException("Root shell stopped responding."));
+            }
+        }
+
+        // Don't hammer su with a new process every second if it keeps refusing us
+        if (System.currentTimeMillis() < nextReopenAt) return;
+        boolean reopenFailed = false;
+        if (current == null || current.isClosed()) {
+            reopenFailed = reopenMain(factory, current) == null;
+        }
+        for (int i = 0; i < readers.length && !reopenFailed; i++) {
+            RootSession reader = readers[i];
+            if (reader == null || reader.isClosed()) {
+                reopenFailed = !reopenReader(factory, readers, i, reader);
+            }
+        }
+        if (reopenFailed) {
+            nextReopenAt = System.currentTimeMillis() + REOPEN_BACKOFF_MS;
+        }
+    }
+
+    /**
+     * Replaces a dead main session. Opening can sit on su's grant prompt for up to a minute, so
+     * it happens under reopenLock only; the class lock is held just for the swap, and only if
+     * nobody else replaced the session or shut everything down meanwhile. Returns whatever the
+     * main session is afterwards.
+     */
+    private static RootSession reopenMain(ShellTransport.Factory factory, RootSession dead) {
+        synchronized (reopenLock) {
+            if (session != dead) return session;
+            RootSession opened = openSession(factory);
+            synchronized (RootShell.class) {
+                if (opened != null && transportFactory == factory && session == dead) {
+                    session = opened;
+                    return opened;
+                }
+            }
+            if (opened != null) opened.close();
+            return session;
+        }
+    }
+
+    private static boolean reopenReader(ShellTransport.Factory factory, RootSession[] readers, int index, RootSession dead) {
+        synchronized (reopenLock) {
+            if (readers[index] != dead) return true;
+            RootSession opened = openSession(factory);
+            synchronized (RootShell.class) {
+                if (opened != null && transportFactory == factory && readSessions == readers && readers[index] == dead) {
+                    readers[index] = opened;
+                    return true;
+                }
             }
+            if (opened != null) opened.close();
+            return false;
         }
     }
 
+    /**
+     * Returns the main session, reopening it on the caller's thread if it died since the last
+     * watchdog pass.
+     */
+    private static RootSession mainSession() {
+        RootSession current = session;
+        if (current != null && !current.isClosed()) return current;
+        ShellTransport.Factory factory = transportFactory;
+        if (factory == null) return current;
+        return reopenMain(factory, current);
+    }
+
+    /**
+     * Number of additional sessions opened for read-only commands. Takes effect on the next
+     * {@link #initRootShell(String)}; 0 runs everything on the single main session.
+     */
+    public static synchronized void setReadPoolSize(int size) {
+        readPoolSize = Math.max(0, size);
+    }
+
+    /**
+     * Size in bytes above which reads and writes are gzip-compressed on the wire. 0 compresses
+     * everything, Integer.MAX_VALUE turns compression off.
+     */
+    public static void setCompressionThreshold(int bytes) {
+        compressionThreshold = Math.max(0, bytes);
+    }
+
+    /**
+     * Routes reads, writes, stats and force-stops through the given helper from now on. Any call
+     * it fails is retried on the shell, and a helper whose connection broke is dropped.
+     */
+    public static void setPrivilegedOps(PrivilegedFileOps ops) {
+        PrivilegedFileOps previous = privilegedOps;
+        privilegedOps = ops;
+        if (previous != null && previous != ops) previous.close();
+    }
+
+    public static boolean hasPrivilegedOps() {
+        PrivilegedFileOps ops = privilegedOps;
+        return ops != null && ops.isAlive();
+    }
+
+    private static PrivilegedFileOps helper() {
+        PrivilegedFileOps ops = privilegedOps;
+        return ops != null && ops.isAlive() ? ops : null;
+    }
+
+    private static void helperFailed(String operation, long startNanos, IOException error) {
+        RootShellStats.record(operation, startNanos, false, 0, 0);
+        lastCommandOutput = "Root helper failed, using the shell: " + error.getMessage();
+        PrivilegedFileOps ops = privilegedOps;
+        if (ops != null && !ops.isAlive()) {
+            privilegedOps = null;
+        }
+    }
+
+    public static synchronized void shutdown() {
+        transportFactory = null;
+        gzipAvailable = null;
+        setPrivilegedOps(null);
+        if (watchdog != null) {
+            watchdog.shutdownNow();
+            watchdog = null;
+        }
+        if (session != null) {
+            session.close();
+            session = null;
+        }
+        for (RootSession reader : readSessions) {
+            if (reader != null) reader.close();
+        }
+        readSessions = new RootSession[0];
+    }
+
     public static String executeCommand(String command) {
         List<String> commands = new ArrayList<>();
         commands.add(command);
         return executeCommands(commands);
     }
 
+    /**
+     * Blocking wrapper around {@link #submitCommands(List)} that returns stdout and stderr
+     * joined, for callers that only log the output. Use {@link #run(List)} to branch on status.
+     */
     public static String executeCommands(List<String> commands) {
-        if (rootProcess == null || rootOutput == null || rootStdout == null) {
-            lastCommandOutput = "Root shell not initialized.";
-            return lastCommandOutput;
-        }
+        return run(commands).getCombinedOutput();
+    }
 
-        StringBuilder output = new StringBuilder();
-        final String END_MARKER = "--END_OF_COMMAND--";
+    public static CommandResult run(String command) {
+        List<String> commands = new ArrayList<>();
+        commands.add(command);
+        return run(commands);
+    }
 
+    /**
+     * Blocking wrapper around {@link #submitCommands(List)}. Safe to call from several threads
+     * at once, each caller only ever sees the output of its own commands.
+     */
+    public static CommandResult run(List<String> commands) {
+        return await(submitCommands(commands));
+    }
+
+    public static CommandResult runRead(String command) {
+        return await(submitRead(command));
+    }
+
+    private static CommandResult runRead(String operation, String command) {
+        List<String> commands = new ArrayList<>();
+        commands.add(command);
+        return await(submitRead(operation, commands));
+    }
+
+    private static CommandResult await(CompletableFuture<CommandResult> future) {
+        CommandResult result;
         try {
-            for (String command : commands) {
-                rootOutput.writeBytes(command + " 2>&1\n");
-            }
-            rootOutput.writeBytes("echo " + END_MARKER + "\n");
-            rootOutput.flush();
-
-            String line;
-            // ** THIS IS THE NEW, ROBUST READING LOGIC **
-            while ((line = rootStdout.readLine()) != null) {
-                if (line.contains(END_MARKER)) {
-                    // Check if there's content on the same line before the marker
-                    int markerIndex = line.indexOf(END_MARKER);
-                    if (markerIndex > 0) {
-                        output.append(line.substring(0, markerIndex));
-                    }
-                    break; // Exit the loop
-                }
-                output.append(line).append("\n");
+            result = future.get();
+        } catch (ExecutionException e) {
+            result = new CommandResult(-1, "", "Exception in root shell: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result = new CommandResult(-1, "", "Interrupted while waiting for root shell.");
+        }
+        lastCommandOutput = result.getCombinedOutput();
+        return result;
+    }
+
+    public static CompletableFuture<CommandResult> submitCommand(String command) {
+        List<String> commands = new ArrayList<>();
+        commands.add(command);
+        return submitCommands(commands);
+    }
+
+    public static CompletableFuture<CommandResult> submitCommands(List<String> commands) {
+        return submitCommands(commands, DEFAULT_TIMEOUT_MS);
+    }
+
+    /**
+     * Writes are never retried: a command that timed out may still have taken effect.
+     */
+    public static CompletableFuture<CommandResult> submitCommands(List<String> commands, long timeoutMillis) {
+        return submitCommands(operationName(commands), commands, timeoutMillis);
+    }
+
+    private static CompletableFuture<CommandResult> submitCommands(String operation, List<String> commands, long timeoutMillis) {
+        RootSession current = mainSession();
+        if (current == null) {
+            return notInitialized();
+        }
+        return traced(operation, commands, current.submit(commands, null, timeoutMillis));
+    }
+
+    /**
+     * Like {@link #submitCommands(List)} but for commands that don't change anything on the
+     * device. They go to whichever pooled session has the fewest commands waiting, and are
+     * transparently resubmitted if their session dies or hangs.
+     */
+    public static CompletableFuture<CommandResult> submitRead(List<String> commands) {
+        return submitRead(operationName(commands), commands);
+    }
+
+    private static CompletableFuture<CommandResult> submitRead(String operation, List<String> commands) {
+        return traced(operation, commands, submitRead(commands, READ_RETRIES));
+    }
+
+    private static CompletableFuture<CommandResult> submitRead(List<String> commands, int retriesLeft) {
+        RootSession least = pickReadSession();
+        if (least == null) {
+            least = mainSession();
+        }
+        CompletableFuture<CommandResult> attempt = least != null
+                ? least.submit(commands, null, DEFAULT_TIMEOUT_MS)
+                : notInitialized();
+        if (retriesLeft == 0) {
+            return attempt;
+        }
+        return attempt.handle((result, error) -> {
+            if (error == null || !isSessionFailure(error)) {
+                return attempt;
             }
+            return submitRead(commands, retriesLeft - 1);
+        }).thenCompose(future -> future);
+    }
 
-            lastCommandOutput = output.toString();
-            return lastCommandOutput;
+    private static boolean isSessionFailure(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof IOException || cause instanceof TimeoutException;
+    }
 
-        } catch (IOException e) {
-            lastCommandOutput = "Exception in executeCommands: " + e.getMessage();
-            return lastCommandOutput;
+    public static CompletableFuture<CommandResult> submitRead(String command) {
+        List<String> commands = new ArrayList<>();
+        commands.add(command);
+        return submitRead(commands);
+    }
+
+    private static RootSession pickReadSession() {
+        RootSession least = null;
+        for (RootSession reader : readSessions) {
+            if (reader == null || reader.isClosed()) continue;
+            if (least == null || reader.getInFlightCount() < least.getInFlightCount()) {
+                least = reader;
+            }
         }
+        return least;
+    }
+
+    /**
+     * Records latency, outcome and transfer size of the submission once it completes.
+     */
+    private static CompletableFuture<CommandResult> traced(String operation, List<String> commands,
+                                                           CompletableFuture<CommandResult> future) {
+        long start = System.nanoTime();
+        final long bytesSent = commandBytes(commands);
+        future.whenComplete((result, error) -> {
+            long received = 0;
+            if (result != null) {
+                // As read off the pipe, so base64 for compressed transfers
+                received = (result.stdout != null ? RootShellStats.utf8Length(result.stdout) : 0)
+                        + RootShellStats.utf8Length(result.stderr);
+            }
+            RootShellStats.record(operation, start, result != null && result.isSuccess(), bytesSent, received);
+        });
+        return future;
+    }
+
+    private static long commandBytes(List<String> commands) {
+        long bytes = 0;
+        for (String command : commands) {
+            bytes += RootShellStats.utf8Length(command) + 1;
+        }
+        return bytes;
+    }
+
+    /**
+     * Trace name for ad-hoc commands: the program being run, like "am" or "getenforce".
+     */
+    private static String operationName(List<String> commands) {
+        if (commands.isEmpty()) return "command";
+        String first = commands.get(0).trim();
+        int space = first.indexOf(' ');
+        return "command:" + (space == -1 ? first : first.substring(0, space));
+    }
+
+    private static CompletableFuture<CommandResult> notInitialized() {
+        CompletableFuture<CommandResult> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("Root shell not initialized."));
+        return failed;
+    }
+
+    /**
+     * Streams the output of a read-only command line by line instead of collecting it. The
+     * consumer runs on the session's reader thread, so it should not block.
+     */
+    public static CompletableFuture<CommandResult> streamRead(String command, LineConsumer consumer) {
+        List<String> commands = new ArrayList<>();
+        commands.add(command);
+        return streamRead(operationName(commands), commands, consumer);
+    }
+
+    private static CompletableFuture<CommandResult> streamRead(String operation, List<String> commands, LineConsumer consumer) {
+        RootSession least = pickReadSession();
+        if (least == null) {
+            least = mainSession();
+        }
+        if (least == null) {
+            return notInitialized();
+        }
+
+        long start = System.nanoTime();
+        final long[] received = new long[1];
+        CompletableFuture<CommandResult> future = least.submit(commands, line -> {
+            received[0] += RootShellStats.utf8Length(line) + 1;
+            consumer.onLine(line);
+        }, DEFAULT_TIMEOUT_MS);
+        future.whenComplete((result, error) -> RootShellStats.record(operation, start,
+                result != null && result.isSuccess(), commandBytes(commands), received[0]));
+        return future;
+    }
+
+    public static String executeRead(String command) {
+        return runRead(command).stdout;
     }
 
+    /**
+     * Returns the file's content, or null if it can't be read or is empty. A single stat of
+     * size, mtime and inode decides on the root side whether the file is transferred at all;
+     * if it matches the last read, the cached copy is returned.
+     */
     public static String getFileContent(String filePath) {
-        String command = "cat \"" + filePath + "\"";
-        String result = executeCommand(command);
+        PrivilegedFileOps ops = helper();
+        if (ops != null) {
+            long start = System.nanoTime();
+            try {
+                String content = helperRead(ops, filePath, "helper.getFileContent", start);
+                return content.isEmpty() ? null : content;
+            } catch (IOException e) {
+                helperFailed("helper.getFileContent", start, e);
+            }
+        }
 
-        if (result == null || result.trim().isEmpty() || result.contains("Permission denied") || result.contains("No such file or directory")) {
-            lastCommandOutput = result;
+        CachedContent cached = contentCache.get(filePath);
+        CommandResult result = runRead("getFileContent", statThenCat(filePath, cached));
+        if (!result.isSuccess()) {
+            contentCache.remove(filePath);
+            readStats.remove(filePath);
             return null;
         }
-        return result;
+
+        int statEnd = result.stdout.indexOf('\n');
+        String stat = statEnd == -1 ? result.stdout : result.stdout.substring(0, statEnd);
+        boolean compressed = stat.startsWith(GZIP_PREFIX);
+        if (compressed) stat = stat.substring(GZIP_PREFIX.length());
+        if (cached != null && cached.stat.equals(stat)) {
+            readStats.put(filePath, stat);
+            return cached.content;
+        }
+
+        String content = statEnd == -1 ? "" : result.stdout.substring(statEnd + 1);
+        if (compressed) {
+            try {
+                content = new String(readFully(gunzipBase64(content)), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                lastCommandOutput = "Compressed read failed: " + e.getMessage();
+                contentCache.remove(filePath);
+                readStats.remove(filePath);
+                return null;
+            }
+        }
+        readStats.put(filePath, stat);
+        if (content.isEmpty()) {
+            return null;
+        }
+        if (content.length() <= CONTENT_CACHE_MAX_CHARS) {
+            contentCache.put(filePath, new CachedContent(stat, content));
+        }
+        return content;
+    }
+
+    /**
+     * Reads a file through {@link #streamRead(String, LineConsumer)} so the caller can work on
+     * it line by line with bounded memory. Returns false if the file couldn't be read. A file
+     * unchanged since {@link #getFileContent(String)} cached it is replayed from memory without
+     * being transferred. Lines lose their line ends, so what is streamed never fills that cache.
+     */
+    public static boolean streamFileContent(String filePath, LineConsumer consumer) {
+        PrivilegedFileOps ops = helper();
+        if (ops != null) {
+            long start = System.nanoTime();
+            String content = null;
+            try {
+                content = helperRead(ops, filePath, "helper.streamFileContent", start);
+            } catch (IOException e) {
+                helperFailed("helper.streamFileContent", start, e);
+            }
+            if (content != null) {
+                // Nothing crosses a pipe here, so the lines are only split up for the caller
+                try (BufferedReader reader = new BufferedReader(new StringReader(content))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        consumer.onLine(line);
+                    }
+                } catch (IOException e) {
+                    // Not thrown by a StringReader
+                }
+                return true;
+            }
+        }
+
+        CachedContent cached = contentCache.get(filePath);
+        final String[] stat = new String[1];
+        // Set when the transfer is compressed, which is then decoded as it arrives
+        final StreamedGunzip[] gunzip = new StreamedGunzip[1];
+        List<String> commands = new ArrayList<>();
+        commands.add(statThenCat(filePath, cached));
+        CommandResult result = await(streamRead("streamFileContent", commands, line -> {
+            if (stat[0] == null) {
+                boolean compressed = line.startsWith(GZIP_PREFIX);
+                stat[0] = compressed ? line.substring(GZIP_PREFIX.length()) : line;
+                if (compressed) gunzip[0] = new StreamedGunzip(consumer);
+                return;
+            }
+            if (gunzip[0] != null) {
+                gunzip[0].write(line);
+            } else {
+                consumer.onLine(line);
+            }
+        }));
+        IOException gunzipFailure = gunzip[0] == null ? null : gunzip[0].finish();
+
+        if (!result.isSuccess() || stat[0] == null) {
+            contentCache.remove(filePath);
+            readStats.remove(filePath);
+            return false;
+        }
+        if (cached != null && cached.stat.equals(stat[0])) {
+            readStats.put(filePath, stat[0]);
+            for (String line : cached.content.split("\n")) {
+                consumer.onLine(line);
+            }
+            return true;
+        }
+        if (gunzipFailure != null) {
+            lastCommandOutput = "Compressed read failed: " + gunzipFailure.getMessage();
+            contentCache.remove(filePath);
+            readStats.remove(filePath);
+            return false;
+        }
+        // The cached copy is out of date now
+        contentCache.remove(filePath);
+        readStats.put(filePath, stat[0]);
+        return true;
+    }
+
+    /**
+     * The size, mtime and inode the file had when it was last read, or null if it hasn't been.
+     */
+    public static String getReadStat(String filePath) {
+        return readStats.get(filePath);
+    }
+
+    /**
+     * The file's current size, mtime and inode in the same layout as {@link #getReadStat(String)},
+     * or null if it can't be stat'ed.
+     */
+    public static String getFileStat(String filePath) {
+        PrivilegedFileOps ops = helper();
+        if (ops != null) {
+            long start = System.nanoTime();
+            try {
+                String stat = ops.stat(resolvePath(filePath));
+                RootShellStats.record("helper.getFileStat", start, true, 0, RootShellStats.utf8Length(stat));
+                return stat;
+            } catch (IOException e) {
+                helperFailed("helper.getFileStat", start, e);
+            }
+        }
+        CommandResult result = runRead("getFileStat",
+                statKeyScript(shellQuote(resolvePath(filePath))) + " && echo \"$__dock_s\"");
+        return result.isSuccess() ? result.stdout.trim() : null;
+    }
+
+    /**
+     * Starts a watcher on its own root session that reports every change to the file. Blocks
+     * while the session opens, so call it off the UI thread. Returns null if the root shell
+     * isn't initialized or the watcher couldn't start.
+     */
+    public static FileWatcher watchFile(String filePath, FileWatcher.OnChangeListener listener) {
+        ShellTransport.Factory factory = transportFactory;
+        if (factory == null) return null;
+        long start = System.nanoTime();
+        FileWatcher watcher = FileWatcher.start(factory, filePath, listener);
+        RootShellStats.record("watchFile", start, watcher != null, 0, 0);
+        return watcher;
+    }
+
+    /**
+     * Prints the file's stat line and, unless it matches the cached one, the content. Above the
+     * compression threshold the content goes through gzip and base64 and the stat line is
+     * prefixed with {@link #GZIP_PREFIX}; a stat line on its own always starts with a digit.
+     */
+    private static String statThenCat(String filePath, CachedContent cached) {
+        String quoted = shellQuote(resolvePath(filePath));
+        String script = statKeyScript(quoted) + " && ";
+        String plain = "echo \"$__dock_s\" && cat " + quoted;
+        String transfer = plain;
+        int threshold = compressionThreshold;
+        if (threshold < Integer.MAX_VALUE && isGzipAvailable()) {
+            transfer = "if [ \"${__dock_s%% *}\" -gt " + threshold + " ]; then"
+                    + " echo \"" + GZIP_PREFIX + "$__dock_s\" && gzip -c " + quoted + " | base64;"
+                    + " else " + plain + "; fi";
+        }
+        if (cached == null) {
+            return script + "{ " + transfer + "; }";
+        }
+        return script + "if [ \"$__dock_s\" = " + shellQuote(cached.stat) + " ]; then echo \"$__dock_s\";"
+                + " else " + transfer + "; fi";
+    }
+
+    /**
+     * Sets __dock_s to the file's size, mtime and inode, as in "1234 1792305057.123456789 262486",
+     * the layout the helper's stat produces too. %Y alone only has whole seconds, which misses a
+     * rewrite to the same size within the second, so the nanoseconds are taken from %y.
+     */
+    private static String statKeyScript(String quotedPath) {
+        // %y is "2026-10-18 06:33:12.123456789 +0000", so the fields are size, seconds, date, time, zone, inode
+        return "__dock_r=$(stat -c '%s %Y %y %i' " + quotedPath + ") && set -- $__dock_r"
+                + " && __dock_s=\"$1 $2.${4#*.} $6\"";
+    }
+
+    /**
+     * Reads through the helper, sharing the stat-validated cache with the shell path. Records
+     * the operation with the bytes that crossed the socket.
+     */
+    private static String helperRead(PrivilegedFileOps ops, String filePath, String operation, long start) throws IOException {
+        String path = resolvePath(filePath);
+        long pathBytes = RootShellStats.utf8Length(path);
+        String stat = ops.stat(path);
+        CachedContent cached = contentCache.get(filePath);
+        if (cached != null && cached.stat.equals(stat)) {
+            readStats.put(filePath, stat);
+            RootShellStats.record(operation, start, true, pathBytes, RootShellStats.utf8Length(stat));
+            return cached.content;
+        }
+        byte[] data = ops.read(path);
+        String content = new String(data, StandardCharsets.UTF_8);
+        RootShellStats.record(operation, start, true, 2 * pathBytes, RootShellStats.utf8Length(stat) + data.length);
+        readStats.put(filePath, stat);
+        if (!content.isEmpty() && content.length() <= CONTENT_CACHE_MAX_CHARS) {
+            contentCache.put(filePath, new CachedContent(stat, content));
+        } else {
+            contentCache.remove(filePath);
+        }
+        return content;
+    }
+
+    /**
+     * Whether the device shell has a gzip that round-trips. Checked once per init.
+     */
+    private static boolean isGzipAvailable() {
+        Boolean available = gzipAvailable;
+        if (available == null) {
+            if (transportFactory == null) return false;
+            CommandResult probe = runRead("probeGzip", "echo ok | gzip -c | base64 | base64 -d | gzip -dc");
+            available = probe.isSuccess() && probe.stdout.trim().equals("ok");
+            gzipAvailable = available;
+        }
+        return available;
+    }
+
+    private static InputStream gunzipBase64(String encoded) throws IOException {
+        byte[] compressed = Base64.getMimeDecoder().decode(encoded);
+        return new GZIPInputStream(new ByteArrayInputStream(compressed));
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(data);
+        } catch (IOException e) {
+            // In-memory streams don't fail
+            throw new IllegalStateException(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static byte[] readFully(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        input.close();
+        return output.toByteArray();
     }
 
     public static boolean writeFileContent(String filePath, String content) {
-        String contextResult = executeCommand("ls -Z \"" + filePath + "\"");
-        String selinuxContext = null;
-        if (contextResult != null && !contextResult.trim().isEmpty() && !contextResult.contains("No such file or directory")) {
-            selinuxContext = contextResult.trim().split("\\s+")[0];
+        return writeFileBytes(filePath, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Uploads raw bytes as base64 through a here-document, so nothing in the payload is ever
+     * parsed by the shell and line lengths stay bounded. The decoded size is checked before the
+     * target is overwritten in place, which keeps its inode, owner, mode and SELinux label.
+     * Payloads above the compression threshold are gzipped before encoding.
+     */
+    public static boolean writeFileBytes(String filePath, byte[] data) {
+        return writeFile(filePath, data).isSuccess();
+    }
+
+    /**
+     * Does the whole write as one scripted transaction in a single round trip: capture the
+     * current owner, mode and label, upload, verify, and put the metadata back only if it no
+     * longer matches. A file that didn't exist yet gets system:system, 666 and the label of its
+     * directory. On success stdout is the file's stat line after the write.
+     *
+     * When the metadata of the path is cached from an earlier write, it is only revalidated
+     * against the file's inode and ctime and the full lookup is skipped. With the root helper
+     * connected it does an atomic replace instead and stdout is empty.
+     */
+    public static CommandResult writeFile(String filePath, byte[] data) {
+        PrivilegedFileOps ops = helper();
+        if (ops != null) {
+            long start = System.nanoTime();
+            try {
+                ops.writeAtomic(resolvePath(filePath), data);
+                RootShellStats.record("helper.writeFile", start, true, data.length, 0);
+                contentCache.remove(filePath);
+                readStats.remove(filePath);
+                // The rename gave the path a new inode, so the cached identity is stale anyway
+                metadataCache.remove(filePath);
+                return new CommandResult(0, "", "");
+            } catch (IOException e) {
+                helperFailed("helper.writeFile", start, e);
+            }
         }
 
+        String tempFile = resolvePath(UPLOAD_DIR) + "/dockeditor_upload_" + uploadCounter.incrementAndGet() + ".tmp";
+        boolean compress = data.length > compressionThreshold && isGzipAvailable();
+        String encoded = Base64.getMimeEncoder(BASE64_LINE_LENGTH, new byte[]{'\n'})
+                .encodeToString(compress ? gzip(data) : data);
+        String lookup = "__dock_meta=$(stat -c '" + METADATA_FORMAT + "' \"$__dock_f\" 2>/dev/null)"
+                + " || __dock_meta=\"system:system 666 $(stat -c %C \"${__dock_f%/*}\")\"";
+        String restore = "set -- $__dock_meta; chown \"$1\" \"$__dock_f\" && chmod \"$2\" \"$__dock_f\""
+                + " && { [ \"$3\" = \"?\" ] || chcon \"$3\" \"$__dock_f\"; }";
+
         List<String> commands = new ArrayList<>();
-        commands.add("printf '%s' '" + content.replace("'", "'\"'\"'") + "' > \"" + filePath + "\"");
-        commands.add("chmod 666 \"" + filePath + "\"");
-        commands.add("chown system:system \"" + filePath + "\"");
+        commands.add("__dock_f=" + shellQuote(resolvePath(filePath)) + "; __dock_t=" + shellQuote(tempFile));
+
+        FileMetadata cached = metadataCache.get(filePath);
+        if (cached != null) {
+            commands.add("__dock_meta=" + shellQuote(cached.getAttributes()));
+            commands.add("[ \"$(stat -c '%i %Z' \"$__dock_f\" 2>/dev/null)\" = " + shellQuote(cached.getIdentity()) + " ]"
+                    + " || { " + lookup + "; }");
+        } else {
+            commands.add(lookup);
+        }
+
+        String decode = compress ? " | gzip -dc > \"$__dock_t\"" : " > \"$__dock_t\"";
+        commands.add("base64 -d <<'" + UPLOAD_EOF + "'" + decode + "\n" + encoded + "\n" + UPLOAD_EOF);
+        commands.add("[ \"$(stat -c %s \"$__dock_t\")\" = " + data.length + " ]"
+                + " && cat \"$__dock_t\" > \"$__dock_f\""
+                + " || { echo \"Upload of " + data.length + " bytes failed\" >&2; false; }");
+        commands.add("rm -f \"$__dock_t\"");
+        // The stat after the write doubles as the metadata check and as the new cache entry
+        commands.add("__dock_after=$(stat -c '%i %Z " + METADATA_FORMAT + "' \"$__dock_f\")");
+        commands.add("if [ \"${__dock_after#* * }\" != \"$__dock_meta\" ]; then " + restore + ";"
+                + " __dock_after=$(stat -c '%i %Z " + METADATA_FORMAT + "' \"$__dock_f\"); fi");
+        commands.add("echo \"$__dock_after\"");
+
+        CommandResult result = await(submitCommands("writeFile", commands, DEFAULT_TIMEOUT_MS));
+        contentCache.remove(filePath);
+        readStats.remove(filePath);
+        FileMetadata written = result.isSuccess() ? FileMetadata.parse(result.stdout) : null;
+        if (written != null) {
+            metadataCache.put(filePath, written);
+        } else {
+            metadataCache.remove(filePath);
+        }
+        return result;
+    }
 
-        if (selinuxContext != null && !selinuxContext.contains("?")) {
-            commands.add("chcon '" + selinuxContext + "' \"" + filePath + "\"");
+    /**
+     * Force-stops a package, through the helper when one is connected.
+     */
+    public static boolean forceStop(String packageName) {
+        PrivilegedFileOps ops = helper();
+        if (ops != null) {
+            long start = System.nanoTime();
+            try {
+                ops.forceStop(packageName);
+                RootShellStats.record("helper.forceStop", start, true, 0, 0);
+                return true;
+            } catch (IOException e) {
+                helperFailed("helper.forceStop", start, e);
+            }
         }
+        return run("am force-stop " + shellQuote(packageName)).isSuccess();
+    }
 
-        String result = executeCommands(commands);
+    private static String resolvePath(String devicePath) {
+        ShellTransport.Factory factory = transportFactory;
+        return factory != null ? factory.resolvePath(devicePath) : devicePath;
+    }
 
-        return result == null || (!result.contains("Permission denied") && !result.contains("No such file or directory"));
+    /**
+     * Single-quotes a value for the shell, so paths with spaces or quotes are passed verbatim.
+     */
+    static String shellQuote(String value) {
+        return "'" + value.replace("'", "'\\''") + "'";
     }
 
     public static String getLastCommandOutput() {
         return lastCommandOutput;
     }
-}
\ No newline at end of file
+}
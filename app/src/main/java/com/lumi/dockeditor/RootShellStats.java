@@ -0,0 +1,123 @@
+package com.lumi.dockeditor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-operation timings and transfer counters for everything that goes through RootShell.
+ * Latencies are kept in a fixed ring per operation, so percentiles cover the most recent calls.
+ */
+public class RootShellStats {
+
+    private static final int SAMPLE_CAPACITY = 512;
+
+    private static final Map<String, Operation> operations = new TreeMap<>();
+
+    public static class Operation {
+        public final String name;
+        public long count;
+        public long failures;
+        public long bytesSent;
+        public long bytesReceived;
+        public double totalMillis;
+        public double maxMillis;
+
+        private final double[] samples = new double[SAMPLE_CAPACITY];
+        private int sampleCount;
+        private int nextSample;
+
+        Operation(String name) {
+            this.name = name;
+        }
+
+        void record(double millis, boolean success, long sent, long received) {
+            count++;
+            if (!success) failures++;
+            bytesSent += sent;
+            bytesReceived += received;
+            totalMillis += millis;
+            maxMillis = Math.max(maxMillis, millis);
+
+            samples[nextSample] = millis;
+            nextSample = (nextSample + 1) % SAMPLE_CAPACITY;
+            sampleCount = Math.min(sampleCount + 1, SAMPLE_CAPACITY);
+        }
+
+        Operation copy() {
+            Operation copy = new Operation(name);
+            copy.count = count;
+            copy.failures = failures;
+            copy.bytesSent = bytesSent;
+            copy.bytesReceived = bytesReceived;
+            copy.totalMillis = totalMillis;
+            copy.maxMillis = maxMillis;
+            System.arraycopy(samples, 0, copy.samples, 0, SAMPLE_CAPACITY);
+            copy.sampleCount = sampleCount;
+            copy.nextSample = nextSample;
+            return copy;
+        }
+
+        public double getMeanMillis() {
+            return count == 0 ? 0 : totalMillis / count;
+        }
+
+        /**
+         * Nearest-rank percentile over the retained samples, e.g. 0.95 for p95.
+         */
+        public double getPercentileMillis(double percentile) {
+            if (sampleCount == 0) return 0;
+            double[] sorted = Arrays.copyOf(samples, sampleCount);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percentile * sampleCount) - 1;
+            return sorted[Math.max(0, Math.min(rank, sampleCount - 1))];
+        }
+    }
+
+    /**
+     * Bytes the text takes as UTF-8, i.e. on the wire, without encoding it.
+     */
+    public static long utf8Length(CharSequence text) {
+        long bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    public static synchronized void record(String operation, long startNanos, boolean success, long bytesSent, long bytesReceived) {
+        Operation stats = operations.get(operation);
+        if (stats == null) {
+            stats = new Operation(operation);
+            operations.put(operation, stats);
+        }
+        stats.record((System.nanoTime() - startNanos) / 1_000_000.0, success, bytesSent, bytesReceived);
+    }
+
+    /**
+     * Copies of the current counters, sorted by operation name.
+     */
+    public static synchronized List<Operation> snapshot() {
+        List<Operation> copies = new ArrayList<>();
+        for (Operation operation : operations.values()) {
+            copies.add(operation.copy());
+        }
+        return copies;
+    }
+
+    public static synchronized void reset() {
+        operations.clear();
+    }
+}
@@ -0,0 +1,36 @@
+package com.lumi.dockeditor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The pipes a RootSession talks through. On the device this is a su process; anything that
+ * behaves like a shell reading commands from stdin can stand in for it.
+ */
+public interface ShellTransport {
+
+    interface Factory {
+        ShellTransport open() throws IOException;
+
+        /**
+         * Maps an absolute device path to where shells from this factory see it. Identity on
+         * the device; a stand-in shell can relocate paths into a sandbox directory.
+         */
+        default String resolvePath(String devicePath) {
+            return devicePath;
+        }
+    }
+
+    OutputStream getStdin();
+
+    InputStream getStdout();
+
+    InputStream getStderr();
+
+    boolean isAlive();
+
+    void waitFor() throws InterruptedException;
+
+    void destroy();
+}
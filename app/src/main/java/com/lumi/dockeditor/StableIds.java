@@ -0,0 +1,47 @@
+package com.lumi.dockeditor;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Item ids for adapters with stable ids. Each distinct key gets the next id the first time it's
+ * seen and keeps it; ids are never handed out twice, so a RecyclerView can't confuse a new row
+ * with one that was removed.
+ */
+public class StableIds<K> {
+
+    private final Map<K, Long> ids;
+    private long nextId;
+
+    /**
+     * With byIdentity, keys are told apart by reference rather than equals, for rows that can
+     * hold equal values, like the same app pinned twice.
+     */
+    public StableIds(boolean byIdentity) {
+        this.ids = byIdentity ? new IdentityHashMap<>() : new HashMap<>();
+    }
+
+    public long get(K key) {
+        Long id = ids.get(key);
+        if (id == null) {
+            id = nextId++;
+            ids.put(key, id);
+        }
+        return id;
+    }
+
+    /**
+     * Hands the old key's id to its replacement, so the row keeps its identity across an edit.
+     */
+    public void transfer(K from, K to) {
+        Long id = ids.remove(from);
+        if (id != null) {
+            ids.put(to, id);
+        }
+    }
+
+    public void remove(K key) {
+        ids.remove(key);
+    }
+}
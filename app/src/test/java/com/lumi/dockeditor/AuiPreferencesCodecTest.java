@@ -0,0 +1,64 @@
+package com.lumi.dockeditor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AuiPreferencesCodecTest {
+
+    private static final String HEADER = "<?xml version='1.0' encoding='utf-8' standalone='yes' ?>\n";
+    private static final String PINNED_JSON =
+            "[{\"packageName\":\"com.oculus.browser\",\"type\":\"APP\",\"platformName\":\"ANDROID_6DOF\"}]";
+    private static final String PINNED_ENTRY =
+            "    <string name=\"aui_bar_apps_pinned\">[{&quot;packageName&quot;:&quot;com.oculus.browser&quot;,"
+            + "&quot;type&quot;:&quot;APP&quot;,&quot;platformName&quot;:&quot;ANDROID_6DOF&quot;}]</string>\n";
+
+    @Test
+    public void emptyMapGetsThePinnedEntry() throws Exception {
+        String written = AuiPreferencesCodec.replacePinnedValue(HEADER + "<map />", PINNED_JSON);
+
+        assertEquals(HEADER + "<map>\n" + PINNED_ENTRY + "</map>", written);
+        assertEquals(PINNED_JSON, AuiPreferencesCodec.readPinnedValue(written));
+    }
+
+    @Test
+    public void mapWithoutPinnedKeyGetsItAppended() throws Exception {
+        String xml = HEADER + "<map>\n"
+                + "    <string name=\"aui_bar_apps_history\">[]</string>\n"
+                + "    <boolean name=\"aui_bar_expanded\" value=\"true\" />\n"
+                + "</map>";
+
+        String written = AuiPreferencesCodec.replacePinnedValue(xml, PINNED_JSON);
+
+        assertEquals(HEADER + "<map>\n"
+                + "    <string name=\"aui_bar_apps_history\">[]</string>\n"
+                + "    <boolean name=\"aui_bar_expanded\" value=\"true\" />\n"
+                + PINNED_ENTRY
+                + "</map>", written);
+        assertEquals(PINNED_JSON, AuiPreferencesCodec.readPinnedValue(written));
+    }
+
+    @Test
+    public void existingPinnedEntryIsReplacedInPlace() throws Exception {
+        String xml = HEADER + "<map>\n"
+                + "    <string name=\"aui_bar_apps_pinned\">[]</string>\n"
+                + "\t<string name=\"aui_bar_apps_history\">[{&quot;packageName&quot;:&quot;a&quot;}]</string>\n"
+                + "</map>";
+
+        String written = AuiPreferencesCodec.replacePinnedValue(xml, PINNED_JSON);
+
+        assertEquals(HEADER + "<map>\n"
+                + PINNED_ENTRY
+                + "\t<string name=\"aui_bar_apps_history\">[{&quot;packageName&quot;:&quot;a&quot;}]</string>\n"
+                + "</map>", written);
+    }
+
+    @Test
+    public void missingFileStartsFromDefaults() throws Exception {
+        String written = AuiPreferencesCodec.replacePinnedValue(null, PINNED_JSON);
+
+        assertEquals(PINNED_JSON, AuiPreferencesCodec.readPinnedValue(written));
+        assertTrue(written.contains("<string name=\"aui_bar_apps_history\">[]</string>"));
+    }
+}
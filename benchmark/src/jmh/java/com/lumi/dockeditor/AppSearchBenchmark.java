@@ -0,0 +1,78 @@
+package com.lumi.dockeditor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The picker's search: building the index for a catalog snapshot, and single queries against
+ * it. One-letter queries like "c" or "a" hit nearly every package and are the slow case. The
+ * query is its own state, so only the search is run once per query.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AppSearchBenchmark {
+
+    private static final String[] WORDS = {"beat", "saber", "browser", "explore", "store", "quest", "vr", "home",
+            "fit", "chat", "horizon", "world", "pilot", "space", "super", "hot", "pistol", "whip", "link", "tv"};
+
+    @State(Scope.Benchmark)
+    public static class Catalog {
+
+        @Param({"100", "1000"})
+        public int packages;
+
+        List<InstalledAppInfo> apps;
+        AppSearchIndex index;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            Random random = new Random(packages);
+            apps = new ArrayList<>();
+            for (int i = 0; i < packages; i++) {
+                String first = WORDS[random.nextInt(WORDS.length)];
+                String second = WORDS[random.nextInt(WORDS.length)];
+                String vendor = i % 10 == 0 ? "oculus" : "vendor" + random.nextInt(50);
+                apps.add(new InstalledAppInfo("com." + vendor + "." + first + second + i,
+                        Character.toUpperCase(first.charAt(0)) + first.substring(1) + " " + second, 0, 0));
+            }
+            Collections.sort(apps, (a, b) -> a.appName.compareToIgnoreCase(b.appName));
+            index = new AppSearchIndex(apps);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Query {
+
+        @Param({"c", "be", "com.oculus", "beat sa"})
+        public String query;
+    }
+
+    /**
+     * What a catalog refresh adds on its own thread.
+     */
+    @Benchmark
+    public AppSearchIndex build(Catalog catalog) {
+        return new AppSearchIndex(catalog.apps);
+    }
+
+    /**
+     * What a keystroke costs on the UI thread.
+     */
+    @Benchmark
+    public List<InstalledAppInfo> search(Catalog catalog, Query typed) {
+        return catalog.index.search(typed.query);
+    }
+}
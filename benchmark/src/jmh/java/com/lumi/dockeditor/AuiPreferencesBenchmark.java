@@ -0,0 +1,118 @@
+package com.lumi.dockeditor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load and save of AUI_PREFERENCES.xml without any root I/O: parsing the pinned apps, decoding
+ * entries, and building what a save writes. Files are synthetic, from a real dock's handful of
+ * entries up to thousands, next to a history of the given length. Run with the gc profiler
+ * (on by default in this module) for allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AuiPreferencesBenchmark {
+
+    @Param({"5", "100", "2000"})
+    public int pinnedEntries;
+
+    @Param({"0", "5000"})
+    public int historyEntries;
+
+    private String xml;
+    private List<AppInfo> apps;
+    private List<AppInfo> editedApps;
+    private byte[] loadedDigest;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Random random = new Random(pinnedEntries * 31L + historyEntries);
+        StringBuilder file = new StringBuilder("<?xml version='1.0' encoding='utf-8' standalone='yes' ?>\n<map>\n");
+        file.append("    <int name=\"aui_version\" value=\"3\" />\n");
+        file.append("    <string name=\"").append(AuiPreferencesCodec.PINNED_KEY).append("\">");
+        appendEntries(file, pinnedEntries, random);
+        file.append("</string>\n");
+        file.append("\t<string name=\"aui_bar_apps_history\">");
+        appendEntries(file, historyEntries, random);
+        file.append("</string>\n");
+        file.append("    <boolean name=\"aui_bar_expanded\" value=\"false\" />\n");
+        file.append("</map>\n");
+        xml = file.toString();
+
+        apps = AuiPreferencesCodec.parsePinnedApps(xml);
+        loadedDigest = AuiPreferencesCodec.digest(AuiPreferencesCodec.serializePinnedApps(apps));
+        editedApps = new ArrayList<>(apps);
+        editedApps.set(0, apps.get(0).withTarget("com.example.edited", "com.example.edited.MainActivity"));
+    }
+
+    private static void appendEntries(StringBuilder file, int count, Random random) {
+        List<String> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String packageName = "com.example.app" + random.nextInt(100000);
+            entries.add("{&quot;packageName&quot;:&quot;" + packageName + "&quot;,&quot;type&quot;:&quot;APP&quot;,"
+                    + "&quot;platformName&quot;:&quot;ANDROID_6DOF&quot;,&quot;appPanelData&quot;:"
+                    + "{&quot;componentName&quot;:&quot;" + packageName + "/" + packageName + ".MainActivity&quot;}}");
+        }
+        file.append(AuiPreferencesCodec.joinArray(entries));
+    }
+
+    /**
+     * What opening the editor costs: finding the pinned value and splitting it into entries.
+     */
+    @Benchmark
+    public List<AppInfo> parse() throws Exception {
+        return AuiPreferencesCodec.parsePinnedApps(xml);
+    }
+
+    /**
+     * Parsing plus decoding every entry's fields, as binding the whole list does.
+     */
+    @Benchmark
+    public void parseAndDecode(Blackhole blackhole) throws Exception {
+        for (AppInfo app : AuiPreferencesCodec.parsePinnedApps(xml)) {
+            blackhole.consume(app.getPackageName());
+            blackhole.consume(app.getActivity());
+        }
+    }
+
+    @Benchmark
+    public AppInfo createEntry() {
+        return AppInfo.create("com.example.app", "com.example.app.MainActivity");
+    }
+
+    /**
+     * A save with nothing changed: serialized and caught by the digest check before any write.
+     */
+    @Benchmark
+    public boolean saveUnchanged() {
+        String pinnedJson = AuiPreferencesCodec.serializePinnedApps(apps);
+        return MessageDigest.isEqual(AuiPreferencesCodec.digest(pinnedJson), loadedDigest);
+    }
+
+    /**
+     * A save with one entry edited: the full file a write would send.
+     */
+    @Benchmark
+    public String saveEdited() throws Exception {
+        String pinnedJson = AuiPreferencesCodec.serializePinnedApps(editedApps);
+        if (MessageDigest.isEqual(AuiPreferencesCodec.digest(pinnedJson), loadedDigest)) {
+            return xml;
+        }
+        return AuiPreferencesCodec.replacePinnedValue(xml, pinnedJson);
+    }
+}
@@ -0,0 +1,35 @@
+package com.lumi.dockeditor;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * RootShell running against a fresh {@link LocalShellTransport} sandbox for one trial. Benchmarks
+ * that need the shell take this as an argument to their own setup, which JMH runs after this one.
+ */
+@State(Scope.Benchmark)
+public class LocalRootShell {
+
+    public static final String TARGET_FILE = DockRepository.TARGET_FILE;
+
+    public LocalShellTransport.Sandbox sandbox;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        sandbox = new LocalShellTransport.Sandbox(Files.createTempDirectory("systemux").toFile());
+        if (!RootShell.initRootShell(sandbox)) {
+            throw new IllegalStateException("Local shell did not start: " + RootShell.getLastCommandOutput());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        RootShell.shutdown();
+    }
+}
@@ -0,0 +1,104 @@
+package com.lumi.dockeditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A plain local shell standing in for su off-device. Device paths are relocated under a
+ * sandbox directory, and the few Android specifics the write path relies on (uid 0, the
+ * system user, SELinux labels) are shimmed with shell functions.
+ */
+public class LocalShellTransport implements ShellTransport {
+
+    private static final String SYSTEMUX_DATA = "/data/user/0/com.oculus.systemux";
+    private static final String FAKE_CONTEXT = "u:object_r:app_data_file:s0";
+
+    // Loaded into every shell before the first command
+    private static final String PREAMBLE =
+            "id() { echo 'uid=0(root) gid=0(root) groups=0(root)'; }\n" +
+            "chown() { :; }\n" +
+            "chcon() { :; }\n" +
+            "stat() {\n" +
+            "  if [ \"$1\" = -c ]; then\n" +
+            "    case \"$2\" in\n" +
+            "      *%C) __fmt=\"${2%\\%C}" + FAKE_CONTEXT + "\"; shift 2; command stat -c \"$__fmt\" \"$@\" ;;\n" +
+            "      *) command stat \"$@\" ;;\n" +
+            "    esac\n" +
+            "  else command stat \"$@\"; fi\n" +
+            "}\n";
+
+    private final Process process;
+
+    /**
+     * Hands out shells that all share one sandbox root.
+     */
+    public static class Sandbox implements ShellTransport.Factory {
+        public final File root;
+
+        public Sandbox(File root) {
+            this.root = root;
+            new File(root, SYSTEMUX_DATA + "/shared_prefs").mkdirs();
+            new File(root, "/data/local/tmp").mkdirs();
+        }
+
+        @Override
+        public ShellTransport open() throws IOException {
+            return new LocalShellTransport(root);
+        }
+
+        @Override
+        public String resolvePath(String devicePath) {
+            return devicePath.startsWith("/data/") ? new File(root, devicePath).getPath() : devicePath;
+        }
+    }
+
+    public LocalShellTransport(File root) throws IOException {
+        process = new ProcessBuilder(shell()).directory(root).start();
+        OutputStream stdin = process.getOutputStream();
+        stdin.write(PREAMBLE.getBytes(StandardCharsets.UTF_8));
+        stdin.flush();
+    }
+
+    /**
+     * mksh is what Android runs; bash is the closest common relative, plain sh the fallback.
+     */
+    private static String shell() {
+        for (String candidate : new String[]{"/bin/mksh", "/usr/bin/mksh", "/bin/bash", "/usr/bin/bash"}) {
+            if (new File(candidate).canExecute()) return candidate;
+        }
+        return "sh";
+    }
+
+    @Override
+    public OutputStream getStdin() {
+        return process.getOutputStream();
+    }
+
+    @Override
+    public InputStream getStdout() {
+        return process.getInputStream();
+    }
+
+    @Override
+    public InputStream getStderr() {
+        return process.getErrorStream();
+    }
+
+    @Override
+    public boolean isAlive() {
+        return process.isAlive();
+    }
+
+    @Override
+    public void waitFor() throws InterruptedException {
+        process.waitFor();
+    }
+
+    @Override
+    public void destroy() {
+        process.destroyForcibly();
+    }
+}
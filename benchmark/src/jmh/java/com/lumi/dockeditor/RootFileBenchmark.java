@@ -0,0 +1,64 @@
+package com.lumi.dockeditor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write and read latency of AUI_PREFERENCES.xml sized payloads through RootShell, from a
+ * typical preferences file up to sizes where the transfer itself dominates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RootFileBenchmark {
+
+    @Param({"1024", "16384", "131072", "1048576"})
+    public int size;
+
+    private byte[] payload;
+
+    @Setup(Level.Trial)
+    public void setUp(LocalRootShell shell) {
+        // Printable text so the read path can return it as a string
+        payload = new byte[size];
+        Random random = new Random(size);
+        for (int i = 0; i < size; i++) {
+            payload[i] = (byte) (i % 80 == 79 ? '\n' : 'a' + random.nextInt(26));
+        }
+        if (!RootShell.writeFileBytes(LocalRootShell.TARGET_FILE, payload)) {
+            throw new IllegalStateException("Seeding failed: " + RootShell.getLastCommandOutput());
+        }
+    }
+
+    @Benchmark
+    public boolean write() {
+        return RootShell.writeFileBytes(LocalRootShell.TARGET_FILE, payload);
+    }
+
+    /**
+     * Unchanged file: only the stat line crosses the pipe.
+     */
+    @Benchmark
+    public String readCached() {
+        return RootShell.getFileContent(LocalRootShell.TARGET_FILE);
+    }
+
+    /**
+     * Full transfer every time, as after an external change.
+     */
+    @Benchmark
+    public String readAfterWrite() {
+        RootShell.writeFileBytes(LocalRootShell.TARGET_FILE, payload);
+        return RootShell.getFileContent(LocalRootShell.TARGET_FILE);
+    }
+}
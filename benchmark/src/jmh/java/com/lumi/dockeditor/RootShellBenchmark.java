@@ -0,0 +1,68 @@
+package com.lumi.dockeditor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command throughput and round-trip latency of RootShell against a local shell stand-in.
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RootShellBenchmark {
+
+    private static final int PIPELINE_DEPTH = 64;
+
+    /**
+     * One command at a time, waiting for each reply: the pure round trip.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public CommandResult roundTrip(LocalRootShell shell) {
+        return RootShell.run(":");
+    }
+
+    /**
+     * Latency distribution of the same round trip.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public CommandResult roundTripLatency(LocalRootShell shell) {
+        return RootShell.run(":");
+    }
+
+    /**
+     * Many commands queued in the main session's pipe before the first reply is read.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OperationsPerInvocation(PIPELINE_DEPTH)
+    public Object pipelined(LocalRootShell shell) {
+        List<CompletableFuture<CommandResult>> futures = new ArrayList<>(PIPELINE_DEPTH);
+        for (int i = 0; i < PIPELINE_DEPTH; i++) {
+            futures.add(RootShell.submitCommand(":"));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    }
+
+    /**
+     * The same burst of reads fanned out across the read pool.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OperationsPerInvocation(PIPELINE_DEPTH)
+    public Object pooledReads(LocalRootShell shell) {
+        List<CompletableFuture<CommandResult>> futures = new ArrayList<>(PIPELINE_DEPTH);
+        for (int i = 0; i < PIPELINE_DEPTH; i++) {
+            futures.add(RootShell.submitRead(":"));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    }
+}
@@ -0,0 +1,65 @@
+package com.lumi.dockeditor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plain against gzip-compressed transfers for shared_prefs shaped files. The size where gzip
+ * starts to win is what RootShell's default compression threshold is based on.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TransferModeBenchmark {
+
+    @Param({"4096", "16384", "65536", "262144", "1048576"})
+    public int size;
+
+    @Param({"plain", "gzip"})
+    public String mode;
+
+    private byte[] payload;
+
+    @Setup(Level.Trial)
+    public void setUp(LocalRootShell shell) {
+        RootShell.setCompressionThreshold(mode.equals("gzip") ? 0 : Integer.MAX_VALUE);
+
+        // Escaped JSON in string entries, like the pinned and history lists
+        StringBuilder xml = new StringBuilder("<?xml version='1.0' encoding='utf-8' standalone='yes' ?>\n<map>\n");
+        Random random = new Random(size);
+        while (xml.length() < size) {
+            xml.append("    <string name=\"key_").append(random.nextInt(100000)).append("\">[{&quot;packageName&quot;:&quot;com.example.app")
+                    .append(random.nextInt(1000)).append("&quot;,&quot;type&quot;:&quot;APP&quot;}]</string>\n");
+        }
+        xml.append("</map>\n");
+        payload = xml.toString().getBytes(StandardCharsets.UTF_8);
+        if (!RootShell.writeFileBytes(LocalRootShell.TARGET_FILE, payload)) {
+            throw new IllegalStateException("Seeding failed: " + RootShell.getLastCommandOutput());
+        }
+    }
+
+    @Benchmark
+    public boolean write() {
+        return RootShell.writeFileBytes(LocalRootShell.TARGET_FILE, payload);
+    }
+
+    /**
+     * The write invalidates the cache, so the read transfers the whole file.
+     */
+    @Benchmark
+    public String writeThenRead() {
+        RootShell.writeFileBytes(LocalRootShell.TARGET_FILE, payload);
+        return RootShell.getFileContent(LocalRootShell.TARGET_FILE);
+    }
+}